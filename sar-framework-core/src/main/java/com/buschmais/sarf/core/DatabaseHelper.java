@@ -44,7 +44,7 @@ public class DatabaseHelper {
 
     @Bean
     @Lazy
-    public XOManager xOManager(URI storeUri) {
+    public XOManagerFactory xOManagerFactory(URI storeUri) {
         LOGGER.info("Setting up Database");
         Properties p = new Properties();
         p.put("neo4j.dbms.allow_format_migration", "true");
@@ -81,7 +81,13 @@ public class DatabaseHelper {
             .build();
         XOManagerFactory factory = XO.createXOManagerFactory(xoUnit);
         LOGGER.info("Setting up Database Successful");
-        return factory.createXOManager();
+        return factory;
+    }
+
+    @Bean
+    @Lazy
+    public XOManager xOManager(URI storeUri) {
+        return xOManagerFactory(storeUri).createXOManager();
     }
 
     @Bean
@@ -63,7 +63,7 @@ public class ClassificationRunner {
                     descriptor.getArtifact());
             LOGGER.info("Marked {} types as internal", internalTypes);
             this.xOManager.currentTransaction().commit();
-            this.typeCouplingEnricher.enrich();
+            this.typeCouplingEnricher.enrich(descriptor);
         } else if (descriptor.getIteration() <= classificationConfigurationRepository
             .getCurrentConfiguration().getIteration()) {
             LOGGER.error("Specified Configuration Iteration must be either 1 or {}",
@@ -43,6 +43,58 @@ public interface ClassificationConfigurationDescriptor extends SARFDescriptor {
 
     Integer getPopulationSize();
 
+    void setExecution(Execution execution);
+
+    Execution getExecution();
+
+    void setThreads(Integer threads);
+
+    Integer getThreads();
+
+    void setIslands(Integer islands);
+
+    Integer getIslands();
+
+    void setMigrationInterval(Integer migrationInterval);
+
+    Integer getMigrationInterval();
+
+    void setTermination(Termination termination);
+
+    Termination getTermination();
+
+    void setSteadyGenerations(Integer steadyGenerations);
+
+    Integer getSteadyGenerations();
+
+    void setHypervolumeEpsilon(Double hypervolumeEpsilon);
+
+    Double getHypervolumeEpsilon();
+
+    void setTimeLimit(Integer timeLimit);
+
+    Integer getTimeLimit();
+
+    void setExtraction(Extraction extraction);
+
+    Extraction getExtraction();
+
+    void setBatchSize(Integer batchSize);
+
+    Integer getBatchSize();
+
+    void setSimilarity(Similarity similarity);
+
+    Similarity getSimilarity();
+
+    void setSimilarNeighbours(Integer similarNeighbours);
+
+    Integer getSimilarNeighbours();
+
+    void setMinSimilarity(Double minSimilarity);
+
+    Double getMinSimilarity();
+
     void setTypeName(String typeName);
 
     String getTypeName();
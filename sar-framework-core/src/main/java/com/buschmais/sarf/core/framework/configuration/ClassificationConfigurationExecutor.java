@@ -4,6 +4,7 @@ import com.buschmais.jqassistant.plugin.java.api.model.TypeDescriptor;
 import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
 import com.buschmais.sarf.core.framework.repository.ComponentRepository;
 import com.buschmais.sarf.core.framework.repository.TypeRepository;
+import com.buschmais.sarf.core.plugin.api.ComponentHierarchy;
 import com.buschmais.sarf.core.plugin.api.Executor;
 import com.buschmais.sarf.core.plugin.api.criterion.ClassificationCriterionDescriptor;
 import com.buschmais.sarf.core.plugin.api.criterion.RuleBasedCriterionDescriptor;
@@ -17,7 +18,6 @@ import com.buschmais.xo.api.Query.Result;
 import com.buschmais.xo.api.XOManager;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimaps;
-import com.google.common.collect.Sets;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections.CollectionUtils;
@@ -25,16 +25,21 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -49,6 +54,17 @@ import java.util.zip.ZipOutputStream;
 @RequiredArgsConstructor
 public class ClassificationConfigurationExecutor implements Executor<ClassificationConfigurationDescriptor, ComponentDescriptor> {
 
+    /**
+     * The weights of the differences of the Tversky index, alpha weights the smaller of both differences.
+     */
+    private static final double TVERSKY_ALPHA = 0.8;
+    private static final double TVERSKY_BETA = 0.6;
+
+    /**
+     * The Tversky index a user component must exceed to be merged with a cohesion component.
+     */
+    private static final double MIN_TVERSKY_INDEX = 0.75;
+
     private final XOManager xoManager;
     private final BeanFactory beanFactory;
     private final ChordDiagramExporter chordDiagramExporter;
@@ -155,37 +171,57 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
     private void removeAmbiguities(Collection<ComponentDescriptor> components, Integer iteration) {
         LOGGER.info("Removing Ambiguities from Pre-Partitioning");
         this.xoManager.currentTransaction().begin();
-        int removed = 0;
-        for (ComponentDescriptor component1 : components) {
-            Long id1 = this.xoManager.getId(component1);
-            for (ComponentDescriptor component2 : components) {
-                Long id2 = this.xoManager.getId(component2);
-                if (component1.getShape().equals(component2.getShape()) && !component1.getName().equals(component2.getName())) {
-                    Result<TypeDescriptor> types = typeRepository.getTypesPreAssignedTo(id1, id2, iteration);
-                    for (TypeDescriptor type : types) {
-                        Double weightC1 = typeRepository.getAssignmentWeight(this.xoManager.getId(type), id1, iteration);
-                        Double weightC2 = typeRepository.getAssignmentWeight(this.xoManager.getId(type), id2, iteration);
-                        if (weightC1 < weightC2 || weightC2 < weightC1) {
-                            LOGGER.info("\tDetected Ambiguity:");
-                            LOGGER.info("\t\tFQN: " + type.getFullQualifiedName());
-                            LOGGER.info("\t\tComponent 1: " + component1.getShape() + " - " + component1.getName() + " Weight: " + weightC1);
-                            LOGGER.info("\t\tComponent 2: " + component2.getShape() + " - " + component2.getName() + " Weight: " + weightC2);
-                            LOGGER.info("\t\tRemoving Assignment to: " + (weightC1 < weightC2 ? component1.getShape() + " - " + component1.getName()
-                                : component2.getShape() + " - " + component2.getName()));
-                        }
-                        if (weightC1 < weightC2) {
-                            typeRepository.removeAssignment(this.xoManager.getId(type), id1, iteration);
-                        } else {
-                            typeRepository.removeAssignment(this.xoManager.getId(type), id2, iteration);
-                        }
-                        removed++;
+        // Component ID -> Component, of equally weighted assignments the one to the first component is kept
+        Map<Long, ComponentDescriptor> componentsById = new LinkedHashMap<>();
+        for (ComponentDescriptor component : components) {
+            componentsById.put(this.xoManager.getId(component), component);
+        }
+        Map<Long, Integer> ranks = new HashMap<>();
+        for (Long id : componentsById.keySet()) {
+            ranks.put(id, ranks.size());
+        }
+        // Type ID -> Shape -> Assignments
+        Map<Long, Map<String, List<Map>>> assignments = new HashMap<>();
+        try (Result<Map> result = this.typeRepository.getAssignments(componentsById.keySet().stream().mapToLong(l -> l).toArray(), iteration)) {
+            for (Map assignment : result) {
+                String shape = componentsById.get((long) assignment.get("component")).getShape();
+                assignments.computeIfAbsent((long) assignment.get("type"), t -> new HashMap<>())
+                    .computeIfAbsent(shape, s -> new ArrayList<>())
+                    .add(assignment);
+            }
+        }
+        Comparator<Map> byWeight = Comparator.<Map>comparingDouble(a -> ((Number) a.get("weight")).doubleValue()).reversed()
+            .thenComparingInt(a -> ranks.get((long) a.get("component")));
+        List<Map<String, Object>> removals = new ArrayList<>();
+        for (Map<String, List<Map>> shapes : assignments.values()) {
+            for (List<Map> ambiguous : shapes.values()) {
+                if (ambiguous.size() < 2) {
+                    continue;
+                }
+                ambiguous.sort(byWeight);
+                Map kept = ambiguous.get(0);
+                ComponentDescriptor keptComponent = componentsById.get((long) kept.get("component"));
+                for (Map removed : ambiguous.subList(1, ambiguous.size())) {
+                    ComponentDescriptor removedComponent = componentsById.get((long) removed.get("component"));
+                    if (!kept.get("weight").equals(removed.get("weight"))) {
+                        LOGGER.info("\tDetected Ambiguity:");
+                        LOGGER.info("\t\tFQN: " + kept.get("fqn"));
+                        LOGGER.info("\t\tComponent 1: " + keptComponent.getShape() + " - " + keptComponent.getName() + " Weight: " + kept.get("weight"));
+                        LOGGER.info("\t\tComponent 2: " + removedComponent.getShape() + " - " + removedComponent.getName() + " Weight: " + removed.get("weight"));
+                        LOGGER.info("\t\tRemoving Assignment to: " + removedComponent.getShape() + " - " + removedComponent.getName());
                     }
-                    types.close();
+                    Map<String, Object> removal = new HashMap<>(4);
+                    removal.put("type", removed.get("type"));
+                    removal.put("component", removed.get("component"));
+                    removals.add(removal);
                 }
             }
         }
+        if (!removals.isEmpty()) {
+            this.typeRepository.removeAssignments(removals, iteration);
+        }
         this.xoManager.currentTransaction().commit();
-        LOGGER.info("\tRemoved " + removed + " Assignments");
+        LOGGER.info("\tRemoved " + removals.size() + " Assignments");
     }
 
     /**
@@ -240,28 +276,11 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
         this.xoManager.currentTransaction().begin();
         // Type ID -> Component IDs
         Map<Long, Collection<Long>> typeToComponents = new HashMap<>();
-        Set<String> shapes = components.stream().map(ComponentDescriptor::getShape).collect(Collectors.toSet());
-        List<TypeDescriptor> types = new ArrayList<>();
-        try (Result<TypeDescriptor> descriptors = this.typeRepository.getAllInternalTypes()) {
-            for (TypeDescriptor t : descriptors) {
-                types.add(t);
-            }
-        }
-        long[] ids = types.stream().mapToLong(t -> this.xoManager.getId(t)).sorted().toArray();
-        for (Long typeId : ids) {
-            for (String shape : shapes) {
-                Long bestCId = componentRepository.getBestComponentForShape(components.stream().mapToLong(c -> this.xoManager.getId(c)).toArray(),
-                    shape, typeId);
-                if (bestCId != null) {
-                    typeToComponents.merge(
-                        typeId,
-                        Sets.newHashSet(bestCId),
-                        (c1, c2) -> {
-                            c1.addAll(c2);
-                            return c1;
-                        }
-                    );
-                }
+        long[] ids = components.stream().mapToLong(c -> this.xoManager.getId(c)).toArray();
+        try (Result<Map> assignments = this.componentRepository.getBestComponents(ids)) {
+            for (Map assignment : assignments) {
+                typeToComponents.computeIfAbsent((long) assignment.get("type"), t -> new HashSet<>())
+                    .add((long) assignment.get("component"));
             }
         }
         // Create Intersecting Components and assign the types to them
@@ -293,21 +312,47 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
         //so we have several solutions, time to make one out of them :)
         this.xoManager.currentTransaction().begin();
 
-        Set<ComponentDescriptor> cohesionComponents = getComponentHierarchy(cohesionResult);
+        List<ComponentDescriptor> cohesionComponents = new ArrayList<>(getComponentHierarchy(cohesionResult));
+        List<ComponentDescriptor> userComponents = new ArrayList<>(userResult);
+
+        // the types of each component as bit set over dense type indices
+        Map<Long, Integer> typeIndices = new HashMap<>();
+        Map<Long, BitSet> containedTypes = new HashMap<>();
+        long[][] cohesionTypes = new long[cohesionComponents.size()][];
+        int[] cohesionTypeCounts = new int[cohesionComponents.size()];
+        for (int i = 0; i < cohesionComponents.size(); i++) {
+            BitSet types = getContainedTypesRecursively(cohesionComponents.get(i), typeIndices, containedTypes);
+            cohesionTypes[i] = types.toLongArray();
+            cohesionTypeCounts[i] = types.cardinality();
+        }
+        long[][] userTypes = new long[userComponents.size()][];
+        int[] userTypeCounts = new int[userComponents.size()];
+        for (int i = 0; i < userComponents.size(); i++) {
+            BitSet types = toBitSet(userComponents.get(i).getContainedTypes(), typeIndices);
+            userTypes[i] = types.toLongArray();
+            userTypeCounts[i] = types.cardinality();
+        }
 
-        for (ComponentDescriptor cohesionComponent : cohesionComponents) {
-            ComponentDescriptor bestUserComponent = null;
-            Double bestUserComponentSimilarity = 0.75;
-            for (ComponentDescriptor userComponent : userResult) {
-                Double similarity = computeTverskyIndex(userComponent, cohesionComponent);
-                if (similarity > bestUserComponentSimilarity) {
-                    bestUserComponent = userComponent;
-                    bestUserComponentSimilarity = similarity;
+        int[] bestUserComponents = new int[cohesionComponents.size()];
+        double[] bestUserComponentSimilarities = new double[cohesionComponents.size()];
+        IntStream.range(0, cohesionComponents.size()).parallel().forEach(c -> {
+            bestUserComponents[c] = -1;
+            bestUserComponentSimilarities[c] = MIN_TVERSKY_INDEX;
+            for (int u = 0; u < userComponents.size(); u++) {
+                double similarity = computeTverskyIndex(userTypes[u], userTypeCounts[u], cohesionTypes[c], cohesionTypeCounts[c]);
+                if (similarity > bestUserComponentSimilarities[c]) {
+                    bestUserComponents[c] = u;
+                    bestUserComponentSimilarities[c] = similarity;
                 }
             }
-            if (bestUserComponent != null) {
+        });
+
+        for (int c = 0; c < cohesionComponents.size(); c++) {
+            if (bestUserComponents[c] >= 0) {
+                ComponentDescriptor cohesionComponent = cohesionComponents.get(c);
+                ComponentDescriptor bestUserComponent = userComponents.get(bestUserComponents[c]);
                 LOGGER.info("Merging user component {}:{} with cohesion component: {}:{} (Tversky Index: {})",
-                    bestUserComponent.getShape(), bestUserComponent.getName(), cohesionComponent.getShape(), cohesionComponent.getName(), bestUserComponentSimilarity);
+                    bestUserComponent.getShape(), bestUserComponent.getName(), cohesionComponent.getShape(), cohesionComponent.getName(), bestUserComponentSimilarities[c]);
                 cohesionComponent.setShape(bestUserComponent.getShape());
                 cohesionComponent.setName(bestUserComponent.getName());
             }
@@ -329,37 +374,54 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
         return childs;
     }
 
-    private Double computeTverskyIndex(ComponentDescriptor userComponent, ComponentDescriptor cohesionComponent) {
-        Result<TypeDescriptor> cohesionTypes = componentRepository.getContainedTypesRecursively(this.xoManager.getId(cohesionComponent));
-        Set<Long> cohesionTypeIds = new HashSet<>();
-        cohesionTypes.forEach(c -> cohesionTypeIds.add(c.getId()));
-        Set<Long> userTypeIds = userComponent.getContainedTypes().stream().map(t -> (Long) t.getId()).collect(Collectors.toSet());
-
-        double alpha = 0.8;
-        double beta = 0.6;
-
-        Set<Long> intersectionSet = new HashSet<>(cohesionTypeIds);
-        intersectionSet.retainAll(userTypeIds);
-
-        Set<Long> aWithoutBSet = new HashSet<>(cohesionTypeIds);
-        aWithoutBSet.removeAll(userTypeIds);
-
-        Set<Long> bWithoutASet = new HashSet<>(userTypeIds);
-        bWithoutASet.removeAll(cohesionTypeIds);
-
-        int a = Math.min(aWithoutBSet.size(), bWithoutASet.size());
-        int b = Math.max(aWithoutBSet.size(), bWithoutASet.size());
-
-        Double intersectionCardinality = Double.valueOf(intersectionSet.size());
-
-        double tversky = intersectionCardinality / (intersectionCardinality + beta * (alpha * a + (1 - alpha) * b));
+    /**
+     * Collect the types contained in a component or any of its contained components.
+     *
+     * @param component The component.
+     * @param typeIndices The dense index of each type by its id, extended by types seen for the first time.
+     * @param containedTypes The already collected types by the id of their component.
+     *
+     * @return The dense indices of the contained types.
+     */
+    private BitSet getContainedTypesRecursively(ComponentDescriptor component, Map<Long, Integer> typeIndices, Map<Long, BitSet> containedTypes) {
+        Long id = this.xoManager.getId(component);
+        BitSet types = containedTypes.get(id);
+        if (types == null) {
+            types = toBitSet(component.getContainedTypes(), typeIndices);
+            for (ComponentDescriptor containedComponent : component.getContainedComponents()) {
+                types.or(getContainedTypesRecursively(containedComponent, typeIndices, containedTypes));
+            }
+            containedTypes.put(id, types);
+        }
+        return types;
+    }
 
-        LOGGER.debug("A: {}", a);
-        LOGGER.debug("B: {}", b);
-        LOGGER.debug("Intersection: {}", intersectionCardinality);
-        LOGGER.debug("Tversky: {}", + tversky);
+    private BitSet toBitSet(Collection<TypeDescriptor> types, Map<Long, Integer> typeIndices) {
+        BitSet bits = new BitSet();
+        for (TypeDescriptor type : types) {
+            bits.set(typeIndices.computeIfAbsent(this.xoManager.getId(type), t -> typeIndices.size()));
+        }
+        return bits;
+    }
 
-        return tversky;
+    /**
+     * Compute the Tversky index of two sets of types given as words of bit sets.
+     *
+     * @param userTypes The types of the user component.
+     * @param userTypeCount The number of types of the user component.
+     * @param cohesionTypes The types of the cohesion component.
+     * @param cohesionTypeCount The number of types of the cohesion component.
+     *
+     * @return The Tversky index.
+     */
+    private static double computeTverskyIndex(long[] userTypes, int userTypeCount, long[] cohesionTypes, int cohesionTypeCount) {
+        int intersection = 0;
+        for (int i = 0; i < Math.min(userTypes.length, cohesionTypes.length); i++) {
+            intersection += Long.bitCount(userTypes[i] & cohesionTypes[i]);
+        }
+        int a = Math.min(cohesionTypeCount - intersection, userTypeCount - intersection);
+        int b = Math.max(cohesionTypeCount - intersection, userTypeCount - intersection);
+        return intersection / (intersection + TVERSKY_BETA * (TVERSKY_ALPHA * a + (1 - TVERSKY_ALPHA) * b));
     }
 
     private void exportResults(Set<ComponentDescriptor> components) {
@@ -377,10 +439,8 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
             .appendLiteral(".zip")
             .toFormatter();
 
-        try {
-            FileOutputStream fileOutputStream =
-                new FileOutputStream(LocalDateTime.now().format(resultFileFormatter));
-            ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream);
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(
+            new FileOutputStream(LocalDateTime.now().format(resultFileFormatter))))) {
             // add resource files
             List<String> resources = Arrays
                 .asList("circle-packing.html", "circle-packing-convert.js", "d3.min.js", "chord-diagram.html",
@@ -398,63 +458,49 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
                 }
                 in.close();
             }
+            // the writer is flushed before each new entry, it must not be closed before the zip stream is finished
+            Writer writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8));
             // write formatted text
-            ZipEntry entry = new ZipEntry("decomposition.txt");
-            zipOutputStream.putNextEntry(entry);
-            StringBuilder formatted = new StringBuilder();
-            prettyPrint(components, "", formatted);
-            zipOutputStream.write(formatted.toString().getBytes());
+            zipOutputStream.putNextEntry(new ZipEntry("decomposition.txt"));
+            prettyPrint(ComponentHierarchy.of(components, this.xoManager).getRoots(), "", writer);
+            writer.flush();
             // write json
-            entry = new ZipEntry("sarf.json");
-            Result<Map> result
-                = componentRepository.getDecomposition(components.stream().mapToLong(c -> this.xoManager.getId(c)).toArray());
-            zipOutputStream.putNextEntry(entry);
-            formatted = new StringBuilder();
-            zipOutputStream.write(("[\n").getBytes());
-            String entries = StreamSupport.stream(result.spliterator(), false)
-                .map(this::formatEntry)
-                .reduce((s1, s2) -> s1 + ",\n" + s2).get();
-            zipOutputStream.write(entries.getBytes());
-            zipOutputStream.write(("\n]").getBytes());
-            zipOutputStream.write(formatted.toString().getBytes());
+            zipOutputStream.putNextEntry(new ZipEntry("sarf.json"));
+            writer.write("[\n");
+            try (Result<Map> result = componentRepository.getDecomposition(components.stream().mapToLong(c -> this.xoManager.getId(c)).toArray())) {
+                String separator = "";
+                for (Map entry : result) {
+                    writer.write(separator);
+                    writer.write(formatEntry(entry));
+                    separator = ",\n";
+                }
+            }
+            writer.write("\n]");
+            writer.flush();
             // write chord
-            entry = new ZipEntry("chord-data.json");
-            zipOutputStream.putNextEntry(entry);
-            zipOutputStream.write(this.chordDiagramExporter.export(components).getBytes());
+            zipOutputStream.putNextEntry(new ZipEntry("chord-data.json"));
+            this.chordDiagramExporter.export(components, zipOutputStream);
             // write tree diagram data
-            entry = new ZipEntry("dendrogram-data.json");
-            zipOutputStream.putNextEntry(entry);
-            zipOutputStream.write(this.dendrogramExporter.export(components).getBytes());
-            // close streams
-            zipOutputStream.close();
-            fileOutputStream.close();
+            zipOutputStream.putNextEntry(new ZipEntry("dendrogram-data.json"));
+            this.dendrogramExporter.export(components, zipOutputStream);
         } catch (IOException e) {
             e.printStackTrace();
         }
         this.xoManager.currentTransaction().commit();
     }
 
-    private void prettyPrint(Collection<ComponentDescriptor> components, String indentation, StringBuilder builder) throws IOException {
-        for (ComponentDescriptor component : components) {
-            builder.append(indentation + " " + component.getName() + " " + Arrays.toString(component.getTopWords()) + "\n");
-            Result<Result.CompositeRowObject> res = this.xoManager.createQuery("MATCH (c) WHERE ID(c) = " + this.xoManager.getId(component) + " " +
-                "OPTIONAL MATCH (c)-[:CONTAINS]->(e) RETURN e").execute(); // TODO: 05.07.2017 Improve !!!
-            Set<ComponentDescriptor> componentDescriptors = new HashSet<>();
-            for (Result.CompositeRowObject r : res) {
-                try {
-                    ComponentDescriptor c = r.get("e", ComponentDescriptor.class);
-                    if (c != null) {
-                        componentDescriptors.add(c);
-                    }
-                } catch (ClassCastException e) {
-                    TypeDescriptor t = r.get("e", TypeDescriptor.class);
-                    if (t != null) {
-                        builder.append(indentation + "\t" + t.getFullQualifiedName() + "\n");
-                    }
+    private void prettyPrint(Collection<ComponentHierarchy.Element> components, String indentation, Writer writer) throws IOException {
+        for (ComponentHierarchy.Element component : components) {
+            writer.write(indentation + " " + component.getName() + " " + Arrays.toString(component.getTopWords()) + "\n");
+            List<ComponentHierarchy.Element> containedComponents = new ArrayList<>();
+            for (ComponentHierarchy.Element child : component.getChildren()) {
+                if (child.isComponent()) {
+                    containedComponents.add(child);
+                } else {
+                    writer.write(indentation + "\t" + child.getFqn() + "\n");
                 }
             }
-            res.close();
-            prettyPrint(componentDescriptors, indentation + "\t", builder);
+            prettyPrint(containedComponents, indentation + "\t", writer);
         }
     }
 
@@ -467,7 +513,7 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
         formatted.append("\t\t\t\t\"shape\": \"" + c.getShape() + "\",\n");
         formatted.append("\t\t\t\t\"name\": \"" + c.getName() + "\",\n");
         formatted.append("\t\t\t\t\"topWords\": [" +
-            Arrays.stream(c.getTopWords()).map(s -> "\"" + s + "\"").reduce((s1, s2) -> s1 + ", " + s2).get() + "]\n"
+            Arrays.stream(c.getTopWords()).map(s -> "\"" + s + "\"").collect(Collectors.joining(", ")) + "]\n"
         );
         formatted.append("\t\t\t},\n");
         CompositeObject cont = (CompositeObject) m.get("cont");
@@ -478,7 +524,7 @@ public class ClassificationConfigurationExecutor implements Executor<Classificat
             formatted.append("\t\t\t{\n")
                 .append("\t\t\t\t\"shape\": \"").append(c.getShape()).append("\",\n")
                 .append("\t\t\t\t\"name\": \"").append(c.getName()).append("\",\n")
-                .append("\t\t\t\t\"topWords\": [").append(Arrays.stream(c.getTopWords()).map(s -> "\"" + s + "\"").reduce((s1, s2) -> s1 + ", " + s2).get()).append("]\n")
+                .append("\t\t\t\t\"topWords\": [").append(Arrays.stream(c.getTopWords()).map(s -> "\"" + s + "\"").collect(Collectors.joining(", "))).append("]\n")
                 .append("\t\t\t}\n");
         } else {
             TypeDescriptor t = (TypeDescriptor) m.get("c1");
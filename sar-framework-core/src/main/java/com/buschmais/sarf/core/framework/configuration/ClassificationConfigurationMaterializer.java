@@ -37,6 +37,19 @@ public class ClassificationConfigurationMaterializer {
         classificationConfigurationDescriptor.setPopulationSize(mapper.populationSize);
         classificationConfigurationDescriptor.setDecomposition(mapper.decomposition);
         classificationConfigurationDescriptor.setOptimization(mapper.optimization);
+        classificationConfigurationDescriptor.setExecution(mapper.execution);
+        classificationConfigurationDescriptor.setThreads(mapper.threads);
+        classificationConfigurationDescriptor.setIslands(mapper.islands);
+        classificationConfigurationDescriptor.setMigrationInterval(mapper.migrationInterval);
+        classificationConfigurationDescriptor.setTermination(mapper.termination);
+        classificationConfigurationDescriptor.setSteadyGenerations(mapper.steadyGenerations);
+        classificationConfigurationDescriptor.setHypervolumeEpsilon(mapper.hypervolumeEpsilon);
+        classificationConfigurationDescriptor.setTimeLimit(mapper.timeLimit);
+        classificationConfigurationDescriptor.setExtraction(mapper.extraction);
+        classificationConfigurationDescriptor.setBatchSize(mapper.batchSize);
+        classificationConfigurationDescriptor.setSimilarity(mapper.similarity);
+        classificationConfigurationDescriptor.setSimilarNeighbours(mapper.similarNeighbours);
+        classificationConfigurationDescriptor.setMinSimilarity(mapper.minSimilarity);
 
         // materialize components
         Set<ComponentDescriptor> componentDescriptors =
@@ -41,6 +41,45 @@ public class ClassificationConfigurationXmlMapper implements XmlMapper{
     @XmlAttribute(name = "optimization")
     public Optimization optimization;
 
+    @XmlAttribute(name = "execution")
+    public Execution execution;
+
+    @XmlAttribute(name = "threads")
+    public Integer threads;
+
+    @XmlAttribute(name = "islands")
+    public Integer islands;
+
+    @XmlAttribute(name = "migrationInterval")
+    public Integer migrationInterval;
+
+    @XmlAttribute(name = "termination")
+    public Termination termination;
+
+    @XmlAttribute(name = "steadyGenerations")
+    public Integer steadyGenerations;
+
+    @XmlAttribute(name = "hypervolumeEpsilon")
+    public Double hypervolumeEpsilon;
+
+    @XmlAttribute(name = "timeLimit")
+    public Integer timeLimit;
+
+    @XmlAttribute(name = "extraction")
+    public Extraction extraction;
+
+    @XmlAttribute(name = "batchSize")
+    public Integer batchSize;
+
+    @XmlAttribute(name = "similarity")
+    public Similarity similarity;
+
+    @XmlAttribute(name = "similarNeighbours")
+    public Integer similarNeighbours;
+
+    @XmlAttribute(name = "minSimilarity")
+    public Double minSimilarity;
+
     @XmlElement(name = "Component")
     public Set<ComponentXmlMapper> definedComponents = new HashSet<>();
 
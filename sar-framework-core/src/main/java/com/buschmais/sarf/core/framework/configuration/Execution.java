@@ -0,0 +1,13 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlType
+@XmlEnum
+public enum Execution {
+    @XmlEnumValue("sequential") SEQUENTIAL,
+    @XmlEnumValue("forkJoin") FORK_JOIN,
+    @XmlEnumValue("fixed") FIXED
+}
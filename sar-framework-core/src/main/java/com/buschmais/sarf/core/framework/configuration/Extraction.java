@@ -0,0 +1,13 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlType
+@XmlEnum
+public enum Extraction {
+    @XmlEnumValue("separate") SEPARATE,
+    @XmlEnumValue("batch") BATCH,
+    @XmlEnumValue("parallel") PARALLEL
+}
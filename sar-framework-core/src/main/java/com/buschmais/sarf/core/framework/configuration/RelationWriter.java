@@ -0,0 +1,72 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import com.buschmais.xo.api.XOManager;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes weighted relationships between types in batches, e.g. through
+ * {@link com.buschmais.sarf.core.framework.repository.MetricRepository#setCouplings(List)}. Each relationship is passed
+ * to the statement as map with the keys source, target and the name of the weight property. The current transaction
+ * is committed after each batch, so that the size of the transaction state is bounded by the batch size. Expects a
+ * transaction of the {@link XOManager} to be active, the transaction is still active after {@link #flush()}.
+ *
+ * @author Stephan Pirnbaum
+ */
+@RequiredArgsConstructor
+final class RelationWriter {
+
+    /**
+     * The number of relationships written per transaction if the configuration does not specify it.
+     */
+    static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private final XOManager xoManager;
+
+    /**
+     * The statement writing a batch, returning the number of written relationships.
+     */
+    private final Function<List<Map<String, Object>>, Long> statement;
+
+    private final String property;
+
+    private final int batchSize;
+
+    private final List<Map<String, Object>> batch = new ArrayList<>();
+
+    /**
+     * The number of relationships written so far.
+     */
+    @Getter
+    private long written = 0;
+
+    void write(long source, long target, double weight) {
+        Map<String, Object> row = new HashMap<>(4);
+        row.put("source", source);
+        row.put("target", target);
+        row.put(this.property, weight);
+        this.batch.add(row);
+        if (this.batch.size() >= this.batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes and commits the pending relationships.
+     */
+    void flush() {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+        this.written += this.statement.apply(this.batch);
+        this.batch.clear();
+        this.xoManager.currentTransaction().commit();
+        this.xoManager.currentTransaction().begin();
+    }
+}
@@ -0,0 +1,12 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlType
+@XmlEnum
+public enum Similarity {
+    @XmlEnumValue("cypher") CYPHER,
+    @XmlEnumValue("memory") MEMORY
+}
@@ -0,0 +1,14 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlType
+@XmlEnum
+public enum Termination {
+    @XmlEnumValue("generations") GENERATIONS,
+    @XmlEnumValue("steadyFitness") STEADY_FITNESS,
+    @XmlEnumValue("hypervolume") HYPERVOLUME,
+    @XmlEnumValue("timeLimit") TIME_LIMIT
+}
@@ -1,16 +1,25 @@
 package com.buschmais.sarf.core.framework.configuration;
 
 import com.buschmais.sarf.core.framework.repository.MetricRepository;
+import com.buschmais.sarf.core.util.LongPairDoubleMap;
 import com.buschmais.xo.api.Query.Result;
 import com.buschmais.xo.api.XOManager;
-import lombok.EqualsAndHashCode;
+import com.buschmais.xo.api.XOManagerFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @author Stephan Pirnbaum
@@ -21,77 +30,249 @@ import java.util.Map;
 @Slf4j
 public class TypeCouplingEnricher {
 
+    /**
+     * The queries of the coupling metrics together with their weights, in the order their couplings are summed up.
+     */
+    private static final List<Metric> METRICS = Arrays.asList(
+        new Metric(MetricRepository::computeCouplingInvokesAbstract, () -> WeightConstants.INVOKES_ABSTRACT_WEIGHT),
+        new Metric(MetricRepository::computeCouplingInvokes, () -> WeightConstants.INVOKES_WEIGHT),
+        new Metric(MetricRepository::computeCouplingInvokesStatic, () -> WeightConstants.INVOKES_STATIC_WEIGHT),
+        new Metric(MetricRepository::computeCouplingExtends, () -> WeightConstants.EXTENDS_WEIGHT),
+        new Metric(MetricRepository::computeCouplingImplements, () -> WeightConstants.IMPLEMENTS_WEIGHT),
+        new Metric(MetricRepository::computeCouplingReturns, () -> WeightConstants.RETURNS_WEIGHT),
+        new Metric(MetricRepository::computeCouplingParameterized, () -> WeightConstants.PARAMETER_WEIGHT),
+        new Metric(MetricRepository::computeCouplingComposes, () -> WeightConstants.COMPOSES_WEIGHT),
+        new Metric(MetricRepository::computeCouplingDeclaresInnerClass, () -> WeightConstants.INNER_CLASSES_WEIGHT),
+        new Metric(MetricRepository::computeCouplingDependsOn, () -> WeightConstants.DEPENDS_ON_WEIGHT),
+        new Metric(MetricRepository::computeCouplingReads, () -> WeightConstants.READS_WEIGHT),
+        new Metric(MetricRepository::computeCouplingReadsStatic, () -> WeightConstants.READS_STATIC_WEIGHT),
+        new Metric(MetricRepository::computeCouplingWrites, () -> WeightConstants.WRITES_WEIGHT),
+        new Metric(MetricRepository::computeCouplingWritesStatic, () -> WeightConstants.WRITES_STATIC_WEIGHT));
+
     private final XOManager xoManager;
+    private final XOManagerFactory xoManagerFactory;
     private final TypeSimilarityEnricher typeSimilarityEnricher;
     private final MetricRepository metricRepository;
 
-    public void enrich() {
+    public void enrich(ClassificationConfigurationDescriptor configuration) {
         LOGGER.info("Computing Coupling between Types");
         this.xoManager.currentTransaction().begin();
-        Map<TypeCoupling, TypeCoupling> couplings = new HashMap<>();
-        try (Result<Map> couplingAbstract = this.metricRepository.computeCouplingInvokesAbstract()) {
-            addCouplings(couplingAbstract, couplings, WeightConstants.INVOKES_ABSTRACT_WEIGHT);
-        }
-        try (Result<Map> couplingInvokes = this.metricRepository.computeCouplingInvokes()) {
-            addCouplings(couplingInvokes, couplings, WeightConstants.INVOKES_WEIGHT);
-        }
-        try (Result<Map> couplingInvokesStatic = this.metricRepository.computeCouplingInvokesStatic()) {
-            addCouplings(couplingInvokesStatic, couplings, WeightConstants.INVOKES_STATIC_WEIGHT);
-        }
-        try (Result<Map> couplingExtends = this.metricRepository.computeCouplingExtends()) {
-            addCouplings(couplingExtends, couplings, WeightConstants.EXTENDS_WEIGHT);
-        }
-        try (Result<Map> couplingImplements = this.metricRepository.computeCouplingImplements()) {
-            addCouplings(couplingImplements, couplings, WeightConstants.IMPLEMENTS_WEIGHT);
-        }
-        try (Result<Map> couplingReturns = this.metricRepository.computeCouplingReturns()) {
-            addCouplings(couplingReturns, couplings, WeightConstants.RETURNS_WEIGHT);
-        }
-        try (Result<Map> couplingParameters = this.metricRepository.computeCouplingParameterized()) {
-            addCouplings(couplingParameters, couplings, WeightConstants.PARAMETER_WEIGHT);
-        }
-        try (Result<Map> couplingComposes = this.metricRepository.computeCouplingComposes()) {
-            addCouplings(couplingComposes, couplings, WeightConstants.COMPOSES_WEIGHT);
+        RelationWriter writer = new RelationWriter(this.xoManager, this.metricRepository::setCouplings, "coupling",
+            configuration.getBatchSize() != null ? configuration.getBatchSize() : RelationWriter.DEFAULT_BATCH_SIZE);
+        LongPairDoubleMap couplings = computeCouplings(configuration.getExtraction());
+        double totalWeight = totalWeight();
+        couplings.forEach((source, target, coupling) -> writer.write(source, target, coupling / totalWeight));
+        writer.flush();
+        LOGGER.info("Coupling between Types Successfully Computed, Written {} Couplings", writer.getWritten());
+        this.xoManager.currentTransaction().commit();
+        this.typeSimilarityEnricher.enrich(configuration);
+    }
+
+    /**
+     * Computes the weighted but not yet normalized coupling between all internal types. All extractions yield the same
+     * couplings, except for the order in which the weighted metrics are summed up.
+     *
+     * @param extraction The {@link Extraction}, the metrics are extracted separately if none is specified.
+     *
+     * @return The couplings by the ids of the source and the target type.
+     */
+    LongPairDoubleMap computeCouplings(Extraction extraction) {
+        if (extraction == Extraction.BATCH) {
+            return computeCouplingsInBatch();
+        } else if (extraction == Extraction.PARALLEL) {
+            return computeCouplingsInParallel();
         }
-        try (Result<Map> couplingInnerClass = this.metricRepository.computeCouplingDeclaresInnerClass()) {
-            addCouplings(couplingInnerClass, couplings, WeightConstants.INNER_CLASSES_WEIGHT);
+        return computeCouplingsSeparately();
+    }
+
+    private LongPairDoubleMap computeCouplingsSeparately() {
+        LongPairDoubleMap couplings = new LongPairDoubleMap();
+        for (Metric metric : METRICS) {
+            try (Result<Map> result = metric.query.apply(this.metricRepository)) {
+                addCouplings(result, couplings, metric.weight.get());
+            }
         }
-        try (Result<Map> couplingDependsOn = this.metricRepository.computeCouplingDependsOn()) {
-            addCouplings(couplingDependsOn, couplings, WeightConstants.DEPENDS_ON_WEIGHT);
+        return couplings;
+    }
+
+    /**
+     * Computes the weighted but not yet normalized coupling between all internal types by running the queries of the
+     * metrics concurrently. Each query runs in its own read transaction of a separate {@link XOManager} and fills its
+     * own map, the maps are merged in the order of the metrics afterwards.
+     */
+    private LongPairDoubleMap computeCouplingsInParallel() {
+        ExecutorService executor =
+            Executors.newFixedThreadPool(Math.min(METRICS.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<CompletableFuture<LongPairDoubleMap>> results = METRICS.stream()
+                .map(metric -> CompletableFuture.supplyAsync(() -> computeCoupling(metric), executor))
+                .collect(Collectors.toList());
+            LongPairDoubleMap couplings = new LongPairDoubleMap();
+            for (CompletableFuture<LongPairDoubleMap> result : results) {
+                result.join().forEach(couplings::add);
+            }
+            return couplings;
+        } finally {
+            executor.shutdown();
         }
-        try (Result<Map> couplingReads = this.metricRepository.computeCouplingReads()) {
-            addCouplings(couplingReads, couplings, WeightConstants.READS_WEIGHT);
+    }
+
+    private LongPairDoubleMap computeCoupling(Metric metric) {
+        LongPairDoubleMap couplings = new LongPairDoubleMap();
+        double weight = metric.weight.get();
+        try (XOManager manager = this.xoManagerFactory.createXOManager()) {
+            manager.currentTransaction().begin();
+            try (Result<Map> result = metric.query.apply(manager.getRepository(MetricRepository.class))) {
+                addCouplings(result, couplings, weight);
+            }
+            manager.currentTransaction().commit();
         }
-        try (Result<Map> couplingReadsStatic = this.metricRepository.computeCouplingReadsStatic()) {
-            addCouplings(couplingReadsStatic, couplings, WeightConstants.READS_STATIC_WEIGHT);
+        return couplings;
+    }
+
+    /**
+     * Computes the weighted but not yet normalized coupling between all internal types from the rows of
+     * {@link MetricRepository#computeCouplingMetrics()}. The field access metrics depend on the accesses of the target
+     * type, they are completed after all rows have been read.
+     */
+    private LongPairDoubleMap computeCouplingsInBatch() {
+        LongPairDoubleMap couplings = new LongPairDoubleMap();
+        LongPairDoubleMap reads = new LongPairDoubleMap();
+        LongPairDoubleMap readsStatic = new LongPairDoubleMap();
+        LongPairDoubleMap writes = new LongPairDoubleMap();
+        LongPairDoubleMap writesStatic = new LongPairDoubleMap();
+        Map<Long, FieldAccesses> fieldAccesses = new HashMap<>();
+        try (Result<Map> metrics = this.metricRepository.computeCouplingMetrics()) {
+            for (Map row : metrics) {
+                long source = (long) row.get("type");
+                addInvocations(source, (List<Map>) row.get("invocations"), couplings);
+                for (Map relation : (List<Map>) row.get("relations")) {
+                    long target = (long) relation.get("target");
+                    long count = (long) relation.get("count");
+                    switch ((String) relation.get("relation")) {
+                        case "EXTENDS":
+                            couplings.add(source, target, WeightConstants.EXTENDS_WEIGHT * count);
+                            break;
+                        case "IMPLEMENTS":
+                            couplings.add(source, target, WeightConstants.IMPLEMENTS_WEIGHT * count);
+                            break;
+                        case "DECLARES":
+                            couplings.add(source, target, WeightConstants.INNER_CLASSES_WEIGHT * count);
+                            break;
+                        case "DEPENDS_ON":
+                            if (source != target) {
+                                couplings.add(source, target, WeightConstants.DEPENDS_ON_WEIGHT * count);
+                            }
+                            break;
+                    }
+                }
+                long methods = (long) row.get("methods");
+                for (Map ret : (List<Map>) row.get("returns")) {
+                    couplings.add(source, (long) ret.get("target"),
+                        WeightConstants.RETURNS_WEIGHT * (long) ret.get("count") / methods);
+                }
+                for (Map parameter : (List<Map>) row.get("parameters")) {
+                    couplings.add(source, (long) parameter.get("target"),
+                        WeightConstants.PARAMETER_WEIGHT * (long) parameter.get("count") / methods);
+                }
+                for (Map composition : (List<Map>) row.get("compositions")) {
+                    couplings.add(source, (long) composition.get("target"),
+                        WeightConstants.COMPOSES_WEIGHT * (long) composition.get("count"));
+                }
+                FieldAccesses accesses = fieldAccesses.computeIfAbsent(source, k -> new FieldAccesses());
+                for (Map access : (List<Map>) row.get("accesses")) {
+                    long target = (long) access.get("target");
+                    long count = (long) access.get("count");
+                    boolean isStatic = Boolean.TRUE.equals(access.get("static"));
+                    boolean isRead = "READS".equals(access.get("access"));
+                    if (source != target) {
+                        if (isRead) {
+                            accesses.readsAll += count;
+                            accesses.reads += isStatic ? 0 : count;
+                        } else {
+                            accesses.writesAll += count;
+                            accesses.writes += isStatic ? 0 : count;
+                        }
+                    }
+                    if (Boolean.TRUE.equals(access.get("internal"))) {
+                        (isRead ? (isStatic ? readsStatic : reads) : (isStatic ? writesStatic : writes))
+                            .add(source, target, count);
+                    }
+                }
+                for (Map access : (List<Map>) row.get("externalAccesses")) {
+                    long count = (long) access.get("count");
+                    boolean isStatic = Boolean.TRUE.equals(access.get("static"));
+                    if ("READS".equals(access.get("access"))) {
+                        accesses.readBy += isStatic ? 0 : count;
+                        accesses.staticReadBy += isStatic ? count : 0;
+                    } else {
+                        accesses.writtenBy += isStatic ? 0 : count;
+                        accesses.staticWrittenBy += isStatic ? count : 0;
+                    }
+                }
+            }
         }
-        try (Result<Map> couplingWrites = this.metricRepository.computeCouplingWrites()) {
-            addCouplings(couplingWrites, couplings, WeightConstants.WRITES_WEIGHT);
+        reads.forEach((source, target, count) -> addFieldAccesses(source, target, count,
+            fieldAccesses.get(source).reads, fieldAccesses.get(target).readBy, WeightConstants.READS_WEIGHT, couplings));
+        readsStatic.forEach((source, target, count) -> addFieldAccesses(source, target, count,
+            fieldAccesses.get(source).readsAll, fieldAccesses.get(target).staticReadBy, WeightConstants.READS_STATIC_WEIGHT, couplings));
+        writes.forEach((source, target, count) -> addFieldAccesses(source, target, count,
+            fieldAccesses.get(source).writes, fieldAccesses.get(target).writtenBy, WeightConstants.WRITES_WEIGHT, couplings));
+        writesStatic.forEach((source, target, count) -> addFieldAccesses(source, target, count,
+            fieldAccesses.get(source).writesAll, fieldAccesses.get(target).staticWrittenBy, WeightConstants.WRITES_STATIC_WEIGHT, couplings));
+        return couplings;
+    }
+
+    private static void addInvocations(long source, List<Map> invocations, LongPairDoubleMap couplings) {
+        long invokes = 0;
+        long invokesAbstract = 0;
+        long invokesStatic = 0;
+        for (Map invocation : invocations) {
+            long count = (long) invocation.get("count");
+            if (Boolean.TRUE.equals(invocation.get("static"))) {
+                invokesStatic += count;
+            } else {
+                invokes += count;
+            }
+            if (Boolean.TRUE.equals(invocation.get("abstract"))) {
+                invokesAbstract += count;
+            }
         }
-        try (Result<Map> couplingWritesStatic = this.metricRepository.computeCouplingWritesStatic()) {
-            addCouplings(couplingWritesStatic, couplings, WeightConstants.WRITES_STATIC_WEIGHT);
+        for (Map invocation : invocations) {
+            if (Boolean.TRUE.equals(invocation.get("internal"))) {
+                long target = (long) invocation.get("target");
+                long count = (long) invocation.get("count");
+                if (Boolean.TRUE.equals(invocation.get("static"))) {
+                    couplings.add(source, target, WeightConstants.INVOKES_STATIC_WEIGHT * count / invokesStatic);
+                } else {
+                    couplings.add(source, target, WeightConstants.INVOKES_WEIGHT * count / invokes);
+                }
+                if (Boolean.TRUE.equals(invocation.get("abstract"))) {
+                    couplings.add(source, target, WeightConstants.INVOKES_ABSTRACT_WEIGHT * count / invokesAbstract);
+                }
+            }
         }
-        normalizeCouplings(couplings);
-        for (TypeCoupling coupling : couplings.values()) {
-            this.metricRepository.setCoupling(coupling.source, coupling.target, coupling.coupling);
+    }
+
+    /**
+     * Adds the coupling of a field access metric, i.e. the squared number of accesses from the source to the target
+     * relative to all accesses of the source to other types and all accesses to the target from other types.
+     */
+    private static void addFieldAccesses(long source, long target, double count, long sourceAccesses,
+                                         long targetAccesses, double weight, LongPairDoubleMap couplings) {
+        if (sourceAccesses > 0 && targetAccesses > 0) {
+            couplings.add(source, target, weight * count * count / ((double) sourceAccesses * targetAccesses));
         }
-        LOGGER.info("Coupling between Types Successfully Computed");
-        this.xoManager.currentTransaction().commit();
-        this.typeSimilarityEnricher.enrich();
     }
 
-    private void addCouplings(Result<Map> result, Map<TypeCoupling, TypeCoupling> couplings, Double weight) {
+    private static void addCouplings(Result<Map> result, LongPairDoubleMap couplings, double weight) {
         for (Map coupl : result) {
-            long source = (long) coupl.get("source");
-            double coupling = (double) coupl.get("coupling") * weight;
-            long target = (long) coupl.get("target");
-            couplings.putIfAbsent(new TypeCoupling(source, target), new TypeCoupling(source, target));
-            couplings.get(new TypeCoupling(source, target)).addCoupling(coupling);
+            couplings.add((long) coupl.get("source"), (long) coupl.get("target"), (double) coupl.get("coupling") * weight);
         }
     }
 
-    private void normalizeCouplings(Map<TypeCoupling, TypeCoupling> couplings) {
-        Double totalWeight =
+    private static double totalWeight() {
+        return
                 WeightConstants.INVOKES_WEIGHT +
                 WeightConstants.INVOKES_STATIC_WEIGHT +
                 WeightConstants.EXTENDS_WEIGHT +
@@ -106,31 +287,30 @@ public class TypeCouplingEnricher {
                 WeightConstants.INNER_CLASSES_WEIGHT +
                 WeightConstants.DEPENDS_ON_WEIGHT +
                 WeightConstants.INVOKES_ABSTRACT_WEIGHT;
-        couplings.forEach((k, v) -> v.normalize(totalWeight));
     }
 
-    @EqualsAndHashCode(of = {"source", "target"})
+    /**
+     * A coupling metric, the weight is resolved when the metric is computed as the weights may be changed at runtime.
+     */
     @RequiredArgsConstructor
-    private class TypeCoupling implements Comparable<TypeCoupling> {
+    private static final class Metric {
 
-        private final long source;
-        private double coupling = 0d;
-        private final long target;
-
-        @Override
-        public int compareTo(TypeCoupling o) {
-            if (this.source == o.source) {
-                return Long.compare(this.target, o.target);
-            }
-            return Long.compare(this.source, o.source);
-        }
+        private final Function<MetricRepository, Result<Map>> query;
+        private final Supplier<Double> weight;
+    }
 
-        void addCoupling(Double coupling) {
-            this.coupling += coupling;
-        }
+    /**
+     * The field accesses of a type to and from other types.
+     */
+    private static final class FieldAccesses {
 
-        void normalize(Double divisor) {
-            this.coupling /= divisor;
-        }
+        private long reads;
+        private long readsAll;
+        private long writes;
+        private long writesAll;
+        private long readBy;
+        private long staticReadBy;
+        private long writtenBy;
+        private long staticWrittenBy;
     }
 }
@@ -1,12 +1,17 @@
 package com.buschmais.sarf.core.framework.configuration;
 
 import com.buschmais.sarf.core.framework.repository.TypeRepository;
+import com.buschmais.sarf.core.util.CouplingGraph;
+import com.buschmais.sarf.core.util.LongPairDoubleMap;
+import com.buschmais.xo.api.Query.Result;
 import com.buschmais.xo.api.XOManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 /**
  * @author Stephan Pirnbaum
  */
@@ -19,11 +24,44 @@ public class TypeSimilarityEnricher {
     private final XOManager xoManager;
     private final TypeRepository typeRepository;
 
-    public void enrich() {
+    public void enrich(ClassificationConfigurationDescriptor configuration) {
         LOGGER.info("Computing Similarity between Types");
         this.xoManager.currentTransaction().begin();
-        typeRepository.computeTypeSimilarity();
+        if (configuration.getSimilarity() == Similarity.MEMORY) {
+            computeSimilarityInMemory(configuration);
+        } else {
+            typeRepository.computeTypeSimilarity();
+            if (configuration.getMinSimilarity() != null) {
+                this.typeRepository.removeSimilaritiesBelow(configuration.getMinSimilarity());
+            }
+            if (configuration.getSimilarNeighbours() != null && configuration.getSimilarNeighbours() > 0) {
+                this.typeRepository.markMostSimilar(configuration.getSimilarNeighbours());
+                this.typeRepository.removeUnmarkedSimilarities();
+            }
+        }
         this.xoManager.currentTransaction().commit();
         LOGGER.info("Similarity between Types Successfully Computed");
     }
+
+    /**
+     * Loads the coupling between the types once and computes the similarities in memory, the similarities are written
+     * back in batches.
+     */
+    private void computeSimilarityInMemory(ClassificationConfigurationDescriptor configuration) {
+        LongPairDoubleMap couplings = new LongPairDoubleMap();
+        try (Result<Map> result = this.typeRepository.getCouplings()) {
+            for (Map coupling : result) {
+                couplings.add((long) coupling.get("source"), (long) coupling.get("target"), (double) coupling.get("coupling"));
+            }
+        }
+        CouplingGraph graph = new CouplingGraph(couplings);
+        RelationWriter writer = new RelationWriter(this.xoManager, this.typeRepository::setSimilarities, "similarity",
+            configuration.getBatchSize() != null ? configuration.getBatchSize() : RelationWriter.DEFAULT_BATCH_SIZE);
+        graph.computeSimilarities(
+            configuration.getSimilarNeighbours() != null ? configuration.getSimilarNeighbours() : 0,
+            configuration.getMinSimilarity() != null ? configuration.getMinSimilarity() : Double.NEGATIVE_INFINITY,
+            writer::write);
+        writer.flush();
+        LOGGER.info("Written {} Similarities", writer.getWritten());
+    }
 }
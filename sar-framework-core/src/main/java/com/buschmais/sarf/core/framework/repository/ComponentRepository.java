@@ -1,6 +1,5 @@
 package com.buschmais.sarf.core.framework.repository;
 
-import com.buschmais.jqassistant.plugin.java.api.model.TypeDescriptor;
 import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
 import com.buschmais.sarf.core.plugin.api.ClassificationInfoDescriptor;
 import com.buschmais.xo.api.Query.Result;
@@ -10,6 +9,7 @@ import com.buschmais.xo.api.annotation.ResultOf.Parameter;
 import com.buschmais.xo.neo4j.api.TypedNeo4jRepository;
 import com.buschmais.xo.neo4j.api.annotation.Cypher;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -54,22 +54,32 @@ public interface ComponentRepository extends TypedNeo4jRepository<ComponentDescr
             "  EXISTS((e1)-[:CONTAINS]->(e2))")
     boolean isCandidateComponent(@Parameter("cId") Long cId, @Parameter("id") Long id);
 
+    /**
+     * Returns the component each internal type is assigned to with the highest weight, per shape of the given
+     * components. Each assignment is returned as map with the keys type and component, of equally weighted components
+     * the one with the smaller id is returned.
+     *
+     * @param ids The ids of the components.
+     *
+     * @return The best assignments.
+     */
     @ResultOf
     @Cypher("MATCH" +
-            "  (c:SARF:Component{shape:{shape}})<-[:MAPS]-(info:ClassificationInfo)-[:CLASSIFIES]->(t:Type) " +
+            "  (c:SARF:Component)<-[:MAPS]-(info:ClassificationInfo)-[:CLASSIFIES]->(t:Type:Internal) " +
             "WHERE" +
-            "  ID(c) IN {ids} AND ID(t) = {tid} " +
+            "  ID(c) IN {ids} " +
             "WITH" +
-            "  max(info.weight) AS maxWeight " +
-            "MATCH" +
-            "  (c:SARF:Component{shape:{shape}})<-[:MAPS]-(info:ClassificationInfo)-[:CLASSIFIES]->(t:Type) " +
-            "WHERE" +
-            "  ID(c) IN {ids} AND ID(t) = {tid} AND info.weight = maxWeight " +
+            "  t, c, max(info.weight) AS weight " +
+            "ORDER BY" +
+            "  weight DESC, ID(c) " +
+            "WITH" +
+            "  t, c.shape AS shape, head(collect(ID(c))) AS component " +
             "RETURN" +
-            "  ID(c) " +
-            "LIMIT" +
-            "  1")
-    Long getBestComponentForShape(@Parameter("ids") long[] longs, @Parameter("shape") String shape, @Parameter("tid") Long typeId);
+            "  {" +
+            "    type: ID(t)," +
+            "    component: component" +
+            "  }")
+    Result<Map> getBestComponents(@Parameter("ids") long[] ids);
 
     @ResultOf
     @Cypher("MATCH\n" +
@@ -92,110 +102,100 @@ public interface ComponentRepository extends TypedNeo4jRepository<ComponentDescr
             "  (c1)-[:COUPLES{coupling:relCoupling}]->(c2)")
     void computeCouplingBetweenComponents(@Parameter("ids") long[] ids);
 
+    /**
+     * Creates a batch of components, each component given as map with the keys key, shape, name and topWords.
+     *
+     * @param components The components to create.
+     *
+     * @return The node id of each created component together with its key.
+     */
     @ResultOf
-    @Cypher("MATCH\n" +
-            "  (c1:Component:SARF)-[:COUPLES]-(c)-[:COUPLES]-(c2:Component:SARF)\n" +
-            "WHERE \n" +
-            "  ID(c1) IN {ids} AND ID(c2) IN {ids} AND ID(c1) > ID(c2)\n" +
-            "WITH\n" +
-            "  DISTINCT c1, c2, c\n" +
-            "MATCH\n" +
-            "  (c1)-[coup:COUPLES]-(c)\n" +
-            "WITH\n" +
-            "  c1, c2, c, SUM(coup.coupling) AS c1Coup\n" +
-            "MATCH\n" +
-            "  (c2)-[coup:COUPLES]-(c)\n" +
-            "WITH \n" +
-            "  c1, c2, c1Coup, SUM(coup.coupling) AS c2Coup\n" +
-            "WITH\n" +
-            "  c1, c2, SUM(c1Coup) + SUM(c2Coup) AS intersection\n" +
-            "OPTIONAL MATCH\n" +
-            "  (c1)-[coup:COUPLES]-(c)\n" +
-            "WHERE \n" +
-            "  c <> c2\n" +
-            "WITH \n" +
-            "  c1, c2, intersection, sum(coup.coupling) AS c1Coup\n" +
-            "OPTIONAL MATCH\n" +
-            "  (c2)-[coup:COUPLES]-(c)\n" +
-            "WHERE\n" +
-            "  c <> c1\n" +
-            "WITH \n" +
-            "  c1, c2, c1Coup, sum(coup.coupling) AS c2Coup, intersection\n" +
-            "MERGE\n" +
-            "  (c1)-[:IS_SIMILAR_TO{similarity:(intersection / (c1Coup + c2Coup))}]-(c2)")
-    void computeSimilarityBetweenComponents(@Parameter("ids") long[] ids);
+    @Cypher("UNWIND" +
+            "  {components} AS component " +
+            "CREATE" +
+            "  (c:SARF:Component{shape:component.shape, name:component.name, topWords:component.topWords}) " +
+            "RETURN" +
+            "  {" +
+            "    key: component.key," +
+            "    id: ID(c)" +
+            "  }")
+    Result<Map> createComponents(@Parameter("components") List<Map<String, Object>> components);
 
+    /**
+     * Creates the CONTAINS relationships of components for a batch of elements, each given as map with the keys
+     * component and element holding the ids of the component and the contained type or component.
+     *
+     * @param elements The contained elements.
+     *
+     * @return The number of created relationships.
+     */
     @ResultOf
-    @Cypher("MATCH" +
-            "  (c:Component)-[:CONTAINS*]->(t:Type:Internal) " +
+    @Cypher("UNWIND" +
+            "  {elements} AS element " +
+            "MATCH" +
+            "  (c:SARF:Component) " +
             "WHERE" +
-            "  ID(c) = {id} " +
+            "  ID(c) = element.component " +
+            "MATCH" +
+            "  (e) " +
+            "WHERE" +
+            "  ID(e) = element.element " +
+            "CREATE" +
+            "  (c)-[r:CONTAINS]->(e) " +
             "RETURN" +
-            "  DISTINCT t")
-    Result<TypeDescriptor> getContainedTypesRecursively(@Parameter("id") long id);
+            "  count(r)")
+    Long createContains(@Parameter("elements") List<Map<String, Object>> elements);
 
+    /**
+     * Creates the COUPLES relationships of components for a batch of couplings, each given as map with the keys source,
+     * target and coupling. Source and target may be components or types.
+     *
+     * @param couplings The couplings to write.
+     *
+     * @return The number of written relationships.
+     */
     @ResultOf
-    @Cypher("MATCH" +
-            "  (c:Component:SARF)-[:CONTAINS]->(e)-[coup:COUPLES]->(t:Type:Internal) " +
+    @Cypher("UNWIND" +
+            "  {couplings} AS coupling " +
+            "MATCH" +
+            "  (e1) " +
             "WHERE" +
-            "  ID(c) IN {ids} AND ID(t) IN {ids} " +
-            "WITH" +
-            "  c, sum(coup.coupling) AS coupling, t " +
+            "  ID(e1) = coupling.source " +
             "MATCH" +
-            "  (c)-[cont:CONTAINS]->(e) " +
-            "WITH" +
-            "  c, coupling, count(e) AS max, t " +
-            "MERGE " +
-            "  (c)-[:COUPLES{coupling:(coupling / max)}]->(t)")
-    void computeCouplingBetweenComponentsAndTypes(@Parameter("ids") long[] ids);
+            "  (e2) " +
+            "WHERE" +
+            "  ID(e2) = coupling.target " +
+            "MERGE" +
+            "  (e1)-[c:COUPLES{coupling:coupling.coupling}]->(e2) " +
+            "RETURN" +
+            "  count(c)")
+    Long setCouplings(@Parameter("couplings") List<Map<String, Object>> couplings);
 
+    /**
+     * Returns the CONTAINS relationships of the given components and all components contained in them, each as map
+     * with the keys parent, child, component, name, fqn and topWords describing the contained child.
+     *
+     * @param ids The ids of the top-level components.
+     *
+     * @return The relationships of the hierarchy.
+     */
     @ResultOf
     @Cypher("MATCH" +
-            "  (c:Component:SARF)-[:CONTAINS]->(e)<-[coup:COUPLES]-(t:Type:Internal) " +
+            "  (root:Component:SARF)-[:CONTAINS*0..]->(c:Component:SARF)-[:CONTAINS]->(e) " +
             "WHERE" +
-            "  ID(c) IN {ids} AND ID(t) IN {ids} " +
-            "WITH" +
-            "  c, sum(coup.coupling) AS coupling, t " +
-            "MATCH" +
-            "  (c)-[cont:CONTAINS]->(e) " +
+            "  ID(root) IN {ids} " +
             "WITH" +
-            "  c, coupling, count(e) AS max, t " +
-            "MERGE " +
-            "  (c)<-[:COUPLES{coupling:(coupling / max)}]-(t)")
-    void computeCouplingBetweenTypesAndComponents(@Parameter("ids") long[] ids);
-
-    @ResultOf
-    @Cypher("MATCH\n" +
-            "  (c:Component:SARF)-[:COUPLES]-(e)-[:COUPLES]-(t:Type:Internal)\n" +
-            "WHERE \n" +
-            "  ID(c) IN {ids} AND ID(t) IN {ids}\n" +
-            "WITH\n" +
-            "  DISTINCT c, e, t\n" +
-            "MATCH\n" +
-            "  (c)-[coup:COUPLES]-(e)\n" +
-            "WITH\n" +
-            "  c, e, t, SUM(coup.coupling) AS cCoup\n" +
-            "MATCH\n" +
-            "  (t)-[coup:COUPLES]-(e)\n" +
-            "WITH \n" +
-            "  c, t, cCoup, SUM(coup.coupling) AS tCoup\n" +
-            "WITH\n" +
-            "  c, t, SUM(cCoup) + SUM(tCoup) AS intersection\n" +
-            "OPTIONAL MATCH\n" +
-            "  (c)-[coup:COUPLES]-(e)\n" +
-            "WHERE \n" +
-            "  e <> t\n" +
-            "WITH \n" +
-            "  c, t, intersection, sum(coup.coupling) AS cCoup\n" +
-            "OPTIONAL MATCH\n" +
-            "  (t)-[coup:COUPLES]-(e)\n" +
-            "WHERE\n" +
-            "  c <> e\n" +
-            "WITH \n" +
-            "  c, t, cCoup, sum(coup.coupling) AS tCoup, intersection\n" +
-            "MERGE\n" +
-            "  (c)-[:IS_SIMILAR_TO{similarity:(intersection / (cCoup + tCoup))}]-(t)")
-    void computeSimilarityBetweenComponentsAndTypes(@Parameter("ids") long[] ids);
+            "  DISTINCT c, e " +
+            "RETURN" +
+            "  {" +
+            "    parent: ID(c)," +
+            "    child: ID(e)," +
+            "    component: e:Component," +
+            "    name: e.name," +
+            "    fqn: e.fqn," +
+            "    topWords: e.topWords" +
+            "  }")
+    Result<Map> getHierarchy(@Parameter("ids") long[] ids);
 
     @ResultOf
     @Cypher("MATCH\n" +
@@ -6,6 +6,7 @@ import com.buschmais.xo.api.annotation.ResultOf;
 import com.buschmais.xo.api.annotation.ResultOf.Parameter;
 import com.buschmais.xo.neo4j.api.annotation.Cypher;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,6 +32,31 @@ public interface MetricRepository {
             "  c")
     void setCoupling(@Parameter("t1") Long id1, @Parameter("t2") Long id2, @Parameter("coupling") Double coupling);
 
+    /**
+     * Creates the COUPLES relationships for a batch of couplings, each given as map with the keys source, target and
+     * coupling.
+     *
+     * @param couplings The couplings to write.
+     *
+     * @return The number of written relationships.
+     */
+    @ResultOf
+    @Cypher("UNWIND" +
+            "  {couplings} AS coupling " +
+            "MATCH" +
+            "  (t1:Type) " +
+            "WHERE" +
+            "  ID(t1) = coupling.source " +
+            "MATCH" +
+            "  (t2:Type) " +
+            "WHERE" +
+            "  ID(t2) = coupling.target " +
+            "MERGE" +
+            "  (t1)-[c:COUPLES{coupling:coupling.coupling}]->(t2) " +
+            "RETURN" +
+            "  count(c)")
+    Long setCouplings(@Parameter("couplings") List<Map<String, Object>> couplings);
+
 
     @ResultOf
     @Cypher("MATCH" +
@@ -315,4 +341,78 @@ public interface MetricRepository {
         "  }")
     Result<Map> computeCouplingWritesStatic();
 
+    /**
+     * Collects the raw counts of all coupling metrics in a single pass, returning one row per internal type. Each row
+     * contains the id of the type, the number of declared methods and a list of counts per related type for each
+     * kind of relation, the metrics are normalized and weighted by the caller.
+     *
+     * @return The counts of the coupling metrics of each internal type.
+     */
+    @ResultOf
+    @Cypher("MATCH" +
+        "  (t:Type:Internal) " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(:Method)-[i:INVOKES]->(m:Method)<-[:DECLARES]-(o:Type) " +
+        "WHERE" +
+        "  t <> o " +
+        "WITH" +
+        "  t, o, m.static = true AS isStatic, m.abstract = true AS isAbstract, count(i) AS cnt " +
+        "WITH" +
+        "  t, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), internal: o:Internal, static: isStatic, abstract: isAbstract, count: cnt} END) AS invocations " +
+        "OPTIONAL MATCH" +
+        "  (t)-[r:EXTENDS|IMPLEMENTS|DECLARES|DEPENDS_ON]->(o:Type:Internal) " +
+        "WITH" +
+        "  t, invocations, o, type(r) AS relation, count(r) AS cnt " +
+        "WITH" +
+        "  t, invocations, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), relation: relation, count: cnt} END) AS relations " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(m:Method)-[:RETURNS]->(o:Type:Internal) " +
+        "WHERE" +
+        "  t <> o " +
+        "WITH" +
+        "  t, invocations, relations, o, count(DISTINCT m) AS cnt " +
+        "WITH" +
+        "  t, invocations, relations, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), count: cnt} END) AS returns " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(m:Method)-[:HAS]->(:Parameter)-[:OF_TYPE]->(o:Type:Internal) " +
+        "WHERE" +
+        "  t <> o " +
+        "WITH" +
+        "  t, invocations, relations, returns, o, count(DISTINCT m) AS cnt " +
+        "WITH" +
+        "  t, invocations, relations, returns, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), count: cnt} END) AS parameters " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(f:Field)-[:OF_TYPE]->(o:Type:Internal) " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, o, count(DISTINCT f) AS cnt " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), count: cnt} END) AS compositions " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(:Method)-[a:READS|WRITES]->(f:Field)<-[:DECLARES]-(o:Type) " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, compositions, o, type(a) AS access, f.static = true AS isStatic, count(DISTINCT a) AS cnt " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, compositions, collect(CASE WHEN o IS NULL THEN NULL ELSE {target: ID(o), internal: o:Internal, access: access, static: isStatic, count: cnt} END) AS accesses " +
+        "OPTIONAL MATCH" +
+        "  (t)-[:DECLARES]->(f:Field)<-[a:READS|WRITES]-(:Method)<-[:DECLARES]-(o:Type) " +
+        "WHERE" +
+        "  t <> o " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, compositions, accesses, type(a) AS access, f.static = true AS isStatic, count(DISTINCT a) AS cnt " +
+        "WITH" +
+        "  t, invocations, relations, returns, parameters, compositions, accesses, collect(CASE WHEN access IS NULL THEN NULL ELSE {access: access, static: isStatic, count: cnt} END) AS externalAccesses " +
+        "RETURN" +
+        "  {" +
+        "    type: ID(t)," +
+        "    methods: size((t)-[:DECLARES]->(:Method))," +
+        "    invocations: invocations," +
+        "    relations: relations," +
+        "    returns: returns," +
+        "    parameters: parameters," +
+        "    compositions: compositions," +
+        "    accesses: accesses," +
+        "    externalAccesses: externalAccesses" +
+        "  }")
+    Result<Map> computeCouplingMetrics();
+
 }
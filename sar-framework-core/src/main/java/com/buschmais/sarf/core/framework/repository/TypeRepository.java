@@ -8,6 +8,9 @@ import com.buschmais.xo.api.annotation.ResultOf.Parameter;
 import com.buschmais.xo.neo4j.api.TypedNeo4jRepository;
 import com.buschmais.xo.neo4j.api.annotation.Cypher;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Created by steph on 04.05.2017.
  */
@@ -52,38 +55,48 @@ public interface TypeRepository extends TypedNeo4jRepository<TypeDescriptor> {
             "  p.fqn")
     String getPackageName(@Parameter("t") Long t);
 
-    @ResultOf
-    @Cypher("MATCH" +
-            "  (t:Type:Internal)<-[:CLASSIFIES]-(:ClassificationInfo{iteration:{i}})-[:MAPS]->(c1:Component:SARF) " +
-            "WHERE" +
-            "  ID(c1) = {c1} " +
-            "WITH" +
-            "  t " +
-            "MATCH" +
-            "  (t)<-[:CLASSIFIES]-(:ClassificationInfo{iteration:{i}})-[:MAPS]->(c2:Component:SARF) " +
-            "WHERE" +
-            "  ID(c2) = {c2} " +
-            "RETURN" +
-            "  DISTINCT t")
-    Result<TypeDescriptor> getTypesPreAssignedTo(@Parameter("c1") Long c1, @Parameter("c2") Long c2, @Parameter("i") Integer iteration);
-
+    /**
+     * Returns the assignments of types to the given components in the given iteration, each as map with the keys type,
+     * fqn, component and weight, the latter being the highest weight of all assignments of the type to the component.
+     *
+     * @param ids The ids of the components.
+     * @param iteration The iteration.
+     *
+     * @return The assignments.
+     */
     @ResultOf
     @Cypher("MATCH" +
             "  (t:Type:Internal)<-[:CLASSIFIES]-(i:ClassificationInfo{iteration:{i}})-[:MAPS]->(c:Component:SARF) " +
             "WHERE" +
-            "  ID(t) = {t} AND ID(c) = {c} " +
+            "  ID(c) IN {ids} " +
+            "WITH" +
+            "  t, c, MAX(i.weight) AS weight " +
             "RETURN" +
-            "  MAX(i.weight)")
-    Double getAssignmentWeight(@Parameter("t") Long type, @Parameter("c") Long c, @Parameter("i") Integer iteration);
+            "  {" +
+            "    type: ID(t)," +
+            "    fqn: t.fqn," +
+            "    component: ID(c)," +
+            "    weight: weight" +
+            "  }")
+    Result<Map> getAssignments(@Parameter("ids") long[] ids, @Parameter("i") Integer iteration);
 
+    /**
+     * Removes a batch of assignments of types to components in the given iteration, each given as map with the keys
+     * type and component.
+     *
+     * @param assignments The assignments to remove.
+     * @param iteration The iteration.
+     */
     @ResultOf
-    @Cypher("MATCH" +
+    @Cypher("UNWIND" +
+            "  {assignments} AS assignment " +
+            "MATCH" +
             "  (t:Type:Internal)<-[:CLASSIFIES]-(i:ClassificationInfo{iteration:{i}})-[:MAPS]->(c:Component:SARF) " +
             "WHERE" +
-            "  ID(t) = {t} AND ID(c) = {c} " +
+            "  ID(t) = assignment.type AND ID(c) = assignment.component " +
             "DETACH DELETE" +
             "  i")
-    void removeAssignment(@Parameter("t") Long type, @Parameter("c") Long c, @Parameter("i") Integer iteration);
+    void removeAssignments(@Parameter("assignments") List<Map<String, Object>> assignments, @Parameter("i") Integer iteration);
 
     @ResultOf
     @Cypher("MATCH\n" +
@@ -99,7 +112,7 @@ public interface TypeRepository extends TypedNeo4jRepository<TypeDescriptor> {
             "MATCH\n" +
             "  (t2)-[c2:COUPLES]-(d)\n" +
             "WITH \n" +
-            "  t1, t2, t1Coup, SUM(c2.coupling) AS t2Coup\n" +
+            "  t1, t2, d, t1Coup, SUM(c2.coupling) AS t2Coup\n" +
             "WITH\n" +
             "  t1, t2, SUM(t1Coup) + SUM(t2Coup) AS intersection\n" +
             "OPTIONAL MATCH\n" +
@@ -117,4 +130,85 @@ public interface TypeRepository extends TypedNeo4jRepository<TypeDescriptor> {
             "MERGE\n" +
             "  (t1)-[:IS_SIMILAR_TO{similarity:(intersection / (t1Coup + t2Coup))}]-(t2)")
     void computeTypeSimilarity();
+
+    @ResultOf
+    @Cypher("MATCH" +
+            "  ()-[s:IS_SIMILAR_TO]->() " +
+            "WHERE" +
+            "  s.similarity < {min} " +
+            "DELETE" +
+            "  s")
+    void removeSimilaritiesBelow(@Parameter("min") Double minSimilarity);
+
+    /**
+     * Marks the IS_SIMILAR_TO relationships to the k most similar neighbours of each type, ties are resolved in favour
+     * of the neighbour with the smaller id.
+     *
+     * @param k The number of neighbours to mark per type.
+     */
+    @ResultOf
+    @Cypher("MATCH" +
+            "  (t:Type:Internal)-[s:IS_SIMILAR_TO]-(o:Type:Internal) " +
+            "WITH" +
+            "  t, s, o " +
+            "ORDER BY" +
+            "  s.similarity DESC, ID(o) " +
+            "WITH" +
+            "  t, collect(s)[0..{k}] AS mostSimilar " +
+            "UNWIND" +
+            "  mostSimilar AS s " +
+            "SET" +
+            "  s.mostSimilar = true")
+    void markMostSimilar(@Parameter("k") Integer k);
+
+    @ResultOf
+    @Cypher("MATCH" +
+            "  ()-[s:IS_SIMILAR_TO]->() " +
+            "WITH" +
+            "  s, EXISTS(s.mostSimilar) AS mostSimilar " +
+            "REMOVE" +
+            "  s.mostSimilar " +
+            "WITH" +
+            "  s, mostSimilar " +
+            "WHERE" +
+            "  NOT mostSimilar " +
+            "DELETE" +
+            "  s")
+    void removeUnmarkedSimilarities();
+
+    @ResultOf
+    @Cypher("MATCH" +
+            "  (t1:Type:Internal)-[c:COUPLES]->(t2:Type:Internal) " +
+            "RETURN" +
+            "  {" +
+            "    source: ID(t1)," +
+            "    target: ID(t2)," +
+            "    coupling: c.coupling" +
+            "  }")
+    Result<Map> getCouplings();
+
+    /**
+     * Creates the IS_SIMILAR_TO relationships for a batch of similarities, each given as map with the keys source,
+     * target and similarity.
+     *
+     * @param similarities The similarities to write.
+     *
+     * @return The number of written relationships.
+     */
+    @ResultOf
+    @Cypher("UNWIND" +
+            "  {similarities} AS similarity " +
+            "MATCH" +
+            "  (t1:Type) " +
+            "WHERE" +
+            "  ID(t1) = similarity.source " +
+            "MATCH" +
+            "  (t2:Type) " +
+            "WHERE" +
+            "  ID(t2) = similarity.target " +
+            "MERGE" +
+            "  (t1)-[s:IS_SIMILAR_TO{similarity:similarity.similarity}]-(t2) " +
+            "RETURN" +
+            "  count(s)")
+    Long setSimilarities(@Parameter("similarities") List<Map<String, Object>> similarities);
 }
@@ -0,0 +1,108 @@
+package com.buschmais.sarf.core.plugin.api;
+
+import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
+import com.buschmais.sarf.core.framework.repository.ComponentRepository;
+import com.buschmais.xo.api.Query.Result;
+import com.buschmais.xo.api.XOManager;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The components of a decomposition and the contained components and types, loaded with a single query and held in
+ * memory, so that exporters can walk the hierarchy without querying each component. A component or type contained in
+ * several components is represented by the same {@link Element}.
+ *
+ * @author Stephan Pirnbaum
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ComponentHierarchy {
+
+    /**
+     * The top-level components.
+     */
+    private final List<Element> roots;
+
+    /**
+     * Load the hierarchy below the given components.
+     *
+     * @param components The top-level components.
+     * @param xoManager The {@link XOManager} with an active transaction.
+     *
+     * @return The hierarchy.
+     */
+    public static ComponentHierarchy of(Collection<ComponentDescriptor> components, XOManager xoManager) {
+        Map<Long, Element> elements = new HashMap<>();
+        List<Element> roots = new ArrayList<>(components.size());
+        for (ComponentDescriptor component : components) {
+            Long id = xoManager.getId(component);
+            Element root = new Element(id, true, component.getName(), null, component.getTopWords());
+            elements.put(id, root);
+            roots.add(root);
+        }
+        // Parent ID -> Child ID
+        List<long[]> edges = new ArrayList<>();
+        ComponentRepository componentRepository = xoManager.getRepository(ComponentRepository.class);
+        try (Result<Map> result = componentRepository.getHierarchy(elements.keySet().stream().mapToLong(l -> l).toArray())) {
+            for (Map row : result) {
+                long child = (long) row.get("child");
+                elements.computeIfAbsent(child, id -> new Element(id, (boolean) row.get("component"),
+                    (String) row.get("name"), (String) row.get("fqn"), toArray(row.get("topWords"))));
+                edges.add(new long[]{(long) row.get("parent"), child});
+            }
+        }
+        for (long[] edge : edges) {
+            elements.get(edge[0]).children.add(elements.get(edge[1]));
+        }
+        return new ComponentHierarchy(roots);
+    }
+
+    private static String[] toArray(Object values) {
+        if (values instanceof Collection) {
+            return ((Collection<?>) values).toArray(new String[0]);
+        }
+        return (String[]) values;
+    }
+
+    /**
+     * A component or a type of the hierarchy.
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Element {
+
+        private final long id;
+
+        /**
+         * Whether the element is a component, otherwise it is a type.
+         */
+        private final boolean component;
+
+        /**
+         * The name of the component or the simple name of the type.
+         */
+        private final String name;
+
+        /**
+         * The fully qualified name of the type, <code>null</code> for components.
+         */
+        private final String fqn;
+
+        /**
+         * The top words of the component, <code>null</code> for types.
+         */
+        private final String[] topWords;
+
+        /**
+         * The contained components and types.
+         */
+        private final List<Element> children = new ArrayList<>();
+    }
+}
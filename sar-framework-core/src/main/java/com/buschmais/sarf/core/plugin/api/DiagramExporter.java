@@ -2,6 +2,8 @@ package com.buschmais.sarf.core.plugin.api;
 
 import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Set;
 
 /**
@@ -13,8 +15,10 @@ public interface DiagramExporter {
      * Export the component data.
      *
      * @param components all components of the solution
-     * @return a text-based representation of the components which serve as input for the diagram.
+     * @param out the stream to write the text-based representation of the components to which serves as input for the
+     *            diagram, the stream is not closed.
+     * @throws IOException if writing to the stream fails.
      */
-    String export(Set<ComponentDescriptor> components);
+    void export(Set<ComponentDescriptor> components, OutputStream out) throws IOException;
 
 }
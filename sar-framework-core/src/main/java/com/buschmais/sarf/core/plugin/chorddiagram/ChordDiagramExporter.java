@@ -5,15 +5,17 @@ import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
 import com.buschmais.sarf.core.plugin.api.DiagramExporter;
 import com.buschmais.xo.api.Query.Result;
 import com.buschmais.xo.api.XOManager;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
 @Lazy
@@ -23,125 +25,103 @@ public class ChordDiagramExporter implements DiagramExporter {
 
     private final DiagramRepository diagramRepository;
 
-    public ChordDiagramExporter(XOManager xoManager, DiagramRepository diagramRepository) {
+    private final ObjectMapper objectMapper;
+
+    public ChordDiagramExporter(XOManager xoManager, DiagramRepository diagramRepository, ObjectMapper objectMapper) {
         this.xoManager = xoManager;
         this.diagramRepository = diagramRepository;
+        this.objectMapper = objectMapper;
     }
 
     @Override
-    public String export(Set<ComponentDescriptor> components) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("[\n")
-            .append(components.stream()
-                .map(c -> formatComponentDescriptor(c, "  "))
-                .collect(Collectors.joining(",\n")))
-            .append("\n]");
-        return builder.toString();
+    public void export(Set<ComponentDescriptor> components, OutputStream out) throws IOException {
+        try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .useDefaultPrettyPrinter()) {
+            generator.writeStartArray();
+            for (ComponentDescriptor component : components) {
+                writeComponentDescriptor(component, generator);
+            }
+            generator.writeEndArray();
+        }
     }
 
-    private String formatComponentDescriptor(ComponentDescriptor componentDescriptor, String indentation) {
-        StringBuilder format = new StringBuilder(indentation + "{\n");
-        String newIndentation = indentation + "  ";
-        format.append(indentation)
-            .append("\"name\": \"" + componentDescriptor.getName())
-            .append("\", \"description\": \"")
-            .append(Arrays.toString(componentDescriptor.getTopWords()))
-            .append("\"")
-            .append(", \"size\": " + diagramRepository.getTypeCountRecursive(this.xoManager.getId(componentDescriptor)));
+    private void writeComponentDescriptor(ComponentDescriptor componentDescriptor, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", componentDescriptor.getName());
+        generator.writeStringField("description", Arrays.toString(componentDescriptor.getTopWords()));
+        generator.writeObjectField("size", this.diagramRepository.getTypeCountRecursive(this.xoManager.getId(componentDescriptor)));
 
         if (componentDescriptor.getContainedComponents().size() > 0 || componentDescriptor.getContainedTypes().size() > 0) {
-            format.append(",\n")
-                .append(indentation)
-                .append("\"children\": [\n");
-            Set contained = new HashSet();
+            generator.writeArrayFieldStart("children");
+            Set<Object> contained = new HashSet<>();
             contained.addAll(componentDescriptor.getContainedTypes());
             contained.addAll(componentDescriptor.getContainedComponents());
-            format.append(contained.stream()
-                .map(t -> {
-                    if (t instanceof TypeDescriptor) {
-                        return formatTypeDescriptor(componentDescriptor, (TypeDescriptor) t, newIndentation);
-                    } else {
-                        return formatComponentDescriptor((ComponentDescriptor) t, newIndentation);
-                    }
-                })
-                .collect(Collectors.joining(",\n")));
-            format.append("\n" + indentation + "]");
+            for (Object element : contained) {
+                if (element instanceof TypeDescriptor) {
+                    writeTypeDescriptor(componentDescriptor, (TypeDescriptor) element, generator);
+                } else {
+                    writeComponentDescriptor((ComponentDescriptor) element, generator);
+                }
+            }
+            generator.writeEndArray();
         }
         // component dependencies
-        format.append(",\n")
-            .append(indentation)
-            .append("\"dependencies\": [\n")
-            .append(formatComponentDependency(componentDescriptor, componentDescriptor, newIndentation));
-        if (diagramRepository.getDependencies(xoManager.getId(componentDescriptor)).hasResult()) {
-            format.append(",\n");
-            format.append(StreamSupport.stream(diagramRepository.getDependencies(xoManager.getId(componentDescriptor)).spliterator(), false)
-                .map(dep -> formatComponentDependency(componentDescriptor, dep, newIndentation))
-                .collect(Collectors.joining(",\n"))
-            );
-
+        generator.writeArrayFieldStart("dependencies");
+        writeComponentDependency(componentDescriptor, componentDescriptor, generator);
+        try (Result<ComponentDescriptor> dependencies = this.diagramRepository.getDependencies(this.xoManager.getId(componentDescriptor))) {
+            for (ComponentDescriptor dependency : dependencies) {
+                writeComponentDependency(componentDescriptor, dependency, generator);
+            }
         }
-        if (diagramRepository.getTypeDependencies(xoManager.getId(componentDescriptor)).hasResult()) {
-            format.append(",\n");
-            format.append(StreamSupport.stream(diagramRepository.getTypeDependencies(xoManager.getId(componentDescriptor)).spliterator(), false)
-                .map(dep -> formatTypeDependency(componentDescriptor, dep, newIndentation))
-                .collect(Collectors.joining(",\n"))
-            );
+        try (Result<TypeDescriptor> dependencies = this.diagramRepository.getTypeDependencies(this.xoManager.getId(componentDescriptor))) {
+            for (TypeDescriptor dependency : dependencies) {
+                writeTypeDependency(componentDescriptor, dependency, generator);
+            }
         }
-        format.append("\n" + indentation + "]\n");
-        format.append(indentation + "}");
-        return format.toString();
+        generator.writeEndArray();
+        generator.writeEndObject();
     }
 
-    private String formatComponentDependency(ComponentDescriptor from, ComponentDescriptor dep, String indentation) {
-        StringBuilder format = new StringBuilder(indentation + "{\"name\": \"");
-        format.append(dep.getName())
-            .append("\", \"weight\": ")
-            .append(diagramRepository.getDependencyCount(xoManager.getId(from), xoManager.getId(dep)))
-            .append("}");
-        return format.toString();
+    private void writeComponentDependency(ComponentDescriptor from, ComponentDescriptor dep, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", dep.getName());
+        generator.writeObjectField("weight", this.diagramRepository.getDependencyCount(this.xoManager.getId(from), this.xoManager.getId(dep)));
+        generator.writeEndObject();
     }
 
-    private String formatTypeDependency(ComponentDescriptor from, TypeDescriptor dep, String indentation) {
-        StringBuilder format = new StringBuilder(indentation + "{\"name\": \"");
-        format.append(dep.getName())
-            .append("\", \"weight\": ")
-            .append(diagramRepository.getTypeDependencyCount(xoManager.getId(from), xoManager.getId(dep)))
-            .append("}");
-        return format.toString();
+    private void writeTypeDependency(ComponentDescriptor from, TypeDescriptor dep, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", dep.getName());
+        generator.writeObjectField("weight", this.diagramRepository.getTypeDependencyCount(this.xoManager.getId(from), this.xoManager.getId(dep)));
+        generator.writeEndObject();
     }
 
-    private String formatTypeDescriptor(ComponentDescriptor parent, TypeDescriptor typeDescriptor, String indentation) {
-        StringBuilder format = new StringBuilder(indentation + "{\"name\": \"");
-        Result<Map> componentDeps = this.diagramRepository.getTypeComponentDependenciesIn(this.xoManager.getId(parent), this.xoManager.getId(typeDescriptor));
-        Result<Map> typeDeps = this.diagramRepository.getTypeTypeDependenciesIn(this.xoManager.getId(parent), this.xoManager.getId(typeDescriptor));
-        format.append(typeDescriptor.getName())
-            .append("\", \"description\": \"")
-            .append(typeDescriptor.getFullQualifiedName())
-            .append("\", \"size\": 1");
-        if (componentDeps.hasResult() || typeDeps.hasResult()) {
-            format.append(",\n")
-                .append(indentation)
-                .append("\"dependencies\": [\n")
-                .append(StreamSupport.stream(componentDeps.spliterator(), false)
-                            .map(e -> "  " + indentation + "{\"name\": \"" + e.get("name") + "\",\"weight\": " + e.get("weight") + "}")
-                            .collect(Collectors.joining(",\n")))
-                .append(StreamSupport.stream(typeDeps.spliterator(), false)
-                            .map(e -> "  " + indentation + "{\"name\": \"" + e.get("name") + "\",\"weight\": " + e.get("weight") + "}")
-                            .collect(Collectors.joining(",\n")))
-                .append("\n")
-                .append(indentation)
-                .append("]\n");
+    private void writeTypeDescriptor(ComponentDescriptor parent, TypeDescriptor typeDescriptor, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", typeDescriptor.getName());
+        generator.writeStringField("description", typeDescriptor.getFullQualifiedName());
+        generator.writeNumberField("size", 1);
+        try (Result<Map> componentDeps = this.diagramRepository.getTypeComponentDependenciesIn(this.xoManager.getId(parent), this.xoManager.getId(typeDescriptor));
+             Result<Map> typeDeps = this.diagramRepository.getTypeTypeDependenciesIn(this.xoManager.getId(parent), this.xoManager.getId(typeDescriptor))) {
+            if (componentDeps.hasResult() || typeDeps.hasResult()) {
+                generator.writeArrayFieldStart("dependencies");
+                for (Map dependency : componentDeps) {
+                    writeDependency(dependency, generator);
+                }
+                for (Map dependency : typeDeps) {
+                    writeDependency(dependency, generator);
+                }
+                generator.writeEndArray();
+            }
         }
-            format.append(indentation).append("}");
-        return format.toString();
+        generator.writeEndObject();
     }
 
-    private String formatTypeDependency(TypeDescriptor from, TypeDescriptor dep, String indentation) {
-        StringBuilder format = new StringBuilder(indentation + "{\"name\": \"");
-        format.append(dep.getName())
-            .append("\", \"weight\": ")
-            .append(this.diagramRepository.getDependencyWeight(xoManager.getId(from), xoManager.getId(dep)))
-            .append("}");
-        return format.toString();
+    private void writeDependency(Map dependency, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("name", dependency.get("name"));
+        generator.writeObjectField("weight", dependency.get("weight"));
+        generator.writeEndObject();
     }
 }
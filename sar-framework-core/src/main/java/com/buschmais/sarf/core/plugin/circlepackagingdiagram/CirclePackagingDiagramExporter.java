@@ -7,6 +7,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.util.Set;
 
 @Service
@@ -17,10 +18,9 @@ public class CirclePackagingDiagramExporter implements DiagramExporter {
     private final XOManager xoManager;
 
     @Override
-    public String export(Set<ComponentDescriptor> components) {
+    public void export(Set<ComponentDescriptor> components, OutputStream out) {
         this.xoManager.currentTransaction().begin();
 
         this.xoManager.currentTransaction().commit();
-        return "";
     }
 }
@@ -4,13 +4,18 @@ import com.buschmais.jqassistant.plugin.java.api.model.TypeDescriptor;
 import com.buschmais.sarf.core.framework.configuration.ClassificationConfigurationDescriptor;
 import com.buschmais.sarf.core.framework.configuration.ClassificationConfigurationRepository;
 import com.buschmais.sarf.core.framework.configuration.Decomposition;
+import com.buschmais.sarf.core.framework.configuration.Execution;
 import com.buschmais.sarf.core.framework.configuration.Optimization;
+import com.buschmais.sarf.core.framework.configuration.Termination;
 import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
 import com.buschmais.sarf.core.framework.repository.ComponentRepository;
 import com.buschmais.sarf.core.framework.repository.TypeRepository;
 import com.buschmais.sarf.core.plugin.api.criterion.ClassificationCriterionExecutor;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.EvolutionSettings;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.Partitioner;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.PartitioningContext;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.Problem;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.TerminationCriterion;
 import com.buschmais.xo.api.Query;
 import com.buschmais.xo.api.XOManager;
 import com.google.common.collect.*;
@@ -20,7 +25,13 @@ import org.apache.commons.lang.StringUtils;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * @author Stephan Pirnbaum
@@ -31,6 +42,28 @@ import java.util.*;
 @RequiredArgsConstructor
 public final class CohesionCriterionExecutor implements ClassificationCriterionExecutor<CohesionCriterionDescriptor> {
 
+    /**
+     * The number of generations between two migrations if evolving several islands.
+     */
+    private static final int DEFAULT_MIGRATION_INTERVAL = 25;
+
+    /**
+     * The number of generations without progress after which a steady evolution is terminated.
+     */
+    private static final int DEFAULT_STEADY_GENERATIONS = 25;
+
+    /**
+     * The minimal improvement of the hypervolume within the steady generations to continue the evolution.
+     */
+    private static final double DEFAULT_HYPERVOLUME_EPSILON = 0.0001;
+
+    /**
+     * The number of components created per statement.
+     */
+    private static final int COMPONENT_BATCH_SIZE = 1000;
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
     private final XOManager xOManager;
 
     @Override
@@ -56,24 +89,31 @@ public final class CohesionCriterionExecutor implements ClassificationCriterionE
         Integer iteration = currentConfiguration.getIteration();
         boolean similarityBased = currentConfiguration.getOptimization() == Optimization.SIMILARITY;
         boolean hierarchical = currentConfiguration.getDecomposition() == Decomposition.DEEP;
-        Integer generations = currentConfiguration.getGenerations();
-        Integer populationSize = currentConfiguration.getPopulationSize();
+        ExecutorService executorService = createExecutorService(currentConfiguration.getExecution(), currentConfiguration.getThreads());
+        EvolutionSettings settings = EvolutionSettings.builder()
+            .generations(currentConfiguration.getGenerations())
+            .populationSize(currentConfiguration.getPopulationSize())
+            .similarityBased(similarityBased)
+            .executor(executorService != null ? executorService : Runnable::run)
+            .islands(currentConfiguration.getIslands() != null ? Math.max(1, currentConfiguration.getIslands()) : 1)
+            .migrationInterval(currentConfiguration.getMigrationInterval() != null ? currentConfiguration.getMigrationInterval() : DEFAULT_MIGRATION_INTERVAL)
+            .termination(createTerminationCriterion(currentConfiguration))
+            .build();
 
-        List<Long> tIds = getTypeIds();
-        long[] ids = tIds.stream().mapToLong(l -> l).toArray();
+        Map<Long, String> typeNames = getTypeNames();
+        long[] ids = typeNames.keySet().stream().mapToLong(l -> l).toArray();
         // create initial partitioning
 
         this.xOManager.currentTransaction().commit();
 
-        int componentLevel = 0;
-        do {
-            LOGGER.info("Computing Level " + componentLevel + " Components");
-            createProblem(ids, similarityBased);
-            this.xOManager.currentTransaction().begin();
-            Map<Long, Set<Long>> partitioning = Partitioner.partition(ids, initialPartitioning, generations, populationSize, similarityBased);
-            this.xOManager.currentTransaction().commit();
-            Set<Long> identifiedGroups = materializeGroups(partitioning, iteration, componentLevel, !hierarchical);
+        long root;
+        try {
             if (!hierarchical) {
+                PartitioningContext context = new PartitioningContext(createProblem(ids, similarityBased));
+                this.xOManager.currentTransaction().begin();
+                Map<Long, Set<Long>> partitioning = Partitioner.partition(context, initialPartitioning, settings);
+                this.xOManager.currentTransaction().commit();
+                Set<Long> identifiedGroups = materializeGroups(partitioning, iteration, typeNames);
                 this.xOManager.currentTransaction().begin();
                 Set<ComponentDescriptor> res = new HashSet<>();
                 for (Long id : identifiedGroups) {
@@ -81,30 +121,109 @@ public final class CohesionCriterionExecutor implements ClassificationCriterionE
                     res.add(cD);
                 }
                 this.xOManager.currentTransaction().commit();
+                LOGGER.info("Partitioning Finished");
                 return res;
             }
-            ids = identifiedGroups.stream().mapToLong(l -> l).sorted().toArray();
-            this.xOManager.currentTransaction().begin();
-            ComponentRepository componentRepository = this.xOManager.getRepository(ComponentRepository.class);
-            componentRepository.computeCouplingBetweenComponents(ids);
-            componentRepository.computeCouplingBetweenComponentsAndTypes(ids);
-            componentRepository.computeCouplingBetweenTypesAndComponents(ids);
-            componentRepository.computeSimilarityBetweenComponents(ids);
-            componentRepository.computeSimilarityBetweenComponentsAndTypes(ids);
-            this.xOManager.currentTransaction().commit();
-            initialPartitioning = partitioningFromGroups(identifiedGroups);
-            componentLevel++;
-        } while (ids.length > 1);
+            // the components are kept in memory with negative ids and persisted once the hierarchy is complete
+            Map<Long, String> componentNames = new LinkedHashMap<>();
+            Map<Long, Set<Long>> componentElements = new HashMap<>();
+            List<HierarchyLevel> levels = new ArrayList<>();
+            HierarchyLevel level = new HierarchyLevel(createProblem(ids, false), similarityBased ? createProblem(ids, true) : null);
+            int componentLevel = 0;
+            do {
+                LOGGER.info("Computing Level " + componentLevel + " Components");
+                PartitioningContext context = new PartitioningContext(level.getProblem());
+                this.xOManager.currentTransaction().begin();
+                Map<Long, Set<Long>> partitioning = Partitioner.partition(context, initialPartitioning, settings);
+                this.xOManager.currentTransaction().commit();
+                Map<Long, Set<Long>> groups = new HashMap<>();
+                for (Map.Entry<Long, Set<Long>> component : partitioning.entrySet()) {
+                    if (component.getValue().size() == 1) {
+                        groups.put(component.getValue().iterator().next(), component.getValue());
+                    } else {
+                        long componentId = -1 - componentNames.size();
+                        componentNames.put(componentId, "COH" + iteration + "L" + componentLevel + "#" + component.getKey());
+                        componentElements.put(componentId, component.getValue());
+                        groups.put(componentId, component.getValue());
+                    }
+                }
+                level = level.contract(groups);
+                levels.add(level);
+                ids = level.getProblem().getIds();
+                initialPartitioning = partitioningFromGroups(groups.keySet());
+                componentLevel++;
+            } while (ids.length > 1);
+            root = persistHierarchy(componentNames, componentElements, typeNames, levels, ids[0]);
+        } finally {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+        }
         this.xOManager.currentTransaction().begin();
-        ComponentDescriptor result = this.xOManager.findById(ComponentDescriptor.class, ids[0]);
+        ComponentDescriptor result = this.xOManager.findById(ComponentDescriptor.class, root);
         this.xOManager.currentTransaction().commit();
         LOGGER.info("Partitioning Finished");
         return Sets.newHashSet(result);
     }
 
+    /**
+     * Create the {@link ExecutorService} used by the evolution engine to evaluate and alter the population.
+     *
+     * @param execution The configured {@link Execution}, sequential execution is used if none is specified.
+     * @param threads The number of threads to use, defaults to the number of available processors.
+     *
+     * @return The {@link ExecutorService} or <code>null</code> if the evolution shall be executed in the calling thread.
+     */
+    private ExecutorService createExecutorService(Execution execution, Integer threads) {
+        int parallelism = threads != null && threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (execution == Execution.FORK_JOIN) {
+            LOGGER.info("Using Fork-Join Pool with Parallelism " + parallelism);
+            return new ForkJoinPool(parallelism);
+        } else if (execution == Execution.FIXED) {
+            LOGGER.info("Using Fixed Thread Pool with " + parallelism + " Threads");
+            return Executors.newFixedThreadPool(parallelism);
+        }
+        return null;
+    }
+
+    /**
+     * Create the {@link TerminationCriterion} stopping the evolution before the configured number of generations is
+     * reached. A time limit starts with the creation of the criterion and covers the whole classification run, i.e.
+     * all levels of a hierarchical decomposition.
+     *
+     * @param configuration The {@link ClassificationConfigurationDescriptor}.
+     *
+     * @return The {@link TerminationCriterion}.
+     */
+    private TerminationCriterion createTerminationCriterion(ClassificationConfigurationDescriptor configuration) {
+        int steadyGenerations = configuration.getSteadyGenerations() != null ? configuration.getSteadyGenerations() : DEFAULT_STEADY_GENERATIONS;
+        Termination termination = configuration.getTermination() != null ? configuration.getTermination() : Termination.GENERATIONS;
+        switch (termination) {
+            case STEADY_FITNESS:
+                LOGGER.info("Terminating after " + steadyGenerations + " Generations without Progress");
+                return TerminationCriterion.steadyFitness(steadyGenerations);
+            case HYPERVOLUME:
+                double epsilon = configuration.getHypervolumeEpsilon() != null ? configuration.getHypervolumeEpsilon() : DEFAULT_HYPERVOLUME_EPSILON;
+                LOGGER.info("Terminating if the Hypervolume improves by less than " + epsilon + " within " + steadyGenerations + " Generations");
+                return TerminationCriterion.hypervolume(steadyGenerations, epsilon);
+            case TIME_LIMIT:
+                if (configuration.getTimeLimit() != null) {
+                    LOGGER.info("Terminating after " + configuration.getTimeLimit() + " Seconds");
+                    return TerminationCriterion.timeLimit(Duration.ofSeconds(configuration.getTimeLimit()));
+                }
+                LOGGER.warn("No Time Limit configured, terminating after the configured Generations");
+                return TerminationCriterion.generations();
+            default:
+                return TerminationCriterion.generations();
+        }
+    }
+
+    /**
+     * Loads the relations between the given elements into a new {@link Problem}. The ids are passed as parameter, so
+     * that the query is parsed and planned once and the rows are streamed directly into the problem.
+     */
     private Problem createProblem(long[] ids, boolean similarityBased) {
-        int maxId = (int) Arrays.stream(ids).max().orElse(0);
-        Problem p = Problem.newInstance(maxId + 1, maxId + 1, similarityBased);
+        Problem p = Problem.newInstance(ids, similarityBased);
         LOGGER.info("Creating Problem");
         Query<Query.Result.CompositeRowObject> query;
         if (similarityBased) {
@@ -112,7 +231,7 @@ public final class CohesionCriterionExecutor implements ClassificationCriterionE
                 "MATCH\n" +
                     "  (t)-[s:IS_SIMILAR_TO]->(d) \n" +
                     "WHERE\n" +
-                    "  ID(t) IN " + Arrays.toString(ids) + " AND ID(d) IN " + Arrays.toString(ids) + "\n" +
+                    "  ID(t) IN {ids} AND ID(d) IN {ids}\n" +
                     "RETURN\n" +
                     "  ID(t) AS t, ID(d) AS d, toFloat(s.similarity) AS r");
         } else {
@@ -120,72 +239,176 @@ public final class CohesionCriterionExecutor implements ClassificationCriterionE
                 "MATCH\n" +
                     "  (t)-[c:COUPLES]->(d) \n" +
                     "WHERE\n" +
-                    "  ID(t) IN " + Arrays.toString(ids) + " AND ID(d) IN " + Arrays.toString(ids) + "\n" +
+                    "  ID(t) IN {ids} AND ID(d) IN {ids}\n" +
                     "RETURN\n" +
                     "  ID(t) AS t, ID(d) AS d, toFloat(c.coupling) AS r");
         }
-        try (Query.Result<Query.Result.CompositeRowObject> res = query.execute()) {
-            res.forEach(r -> p.addRelation(r.get("t", Long.class).intValue(), r.get("d", Long.class).intValue(), r.get("r", Double.class)));
+        try (Query.Result<Query.Result.CompositeRowObject> res = query.withParameter("ids", ids).execute()) {
+            res.forEach(r -> p.addRelation(r.get("t", Long.class), r.get("d", Long.class), r.get("r", Double.class)));
         }
         LOGGER.info("Creating Problem Successful");
         return p;
     }
 
-    private Set<Long> materializeGroups(Map<Long, Set<Long>> partitioning, int iteration, int level, boolean typeWrapper) {
+    private Set<Long> materializeGroups(Map<Long, Set<Long>> partitioning, int iteration, Map<Long, String> typeNames) {
+        Map<Long, String> componentNames = new LinkedHashMap<>();
+        Map<Long, Set<Long>> componentElements = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> component : partitioning.entrySet()) {
+            long componentId = -1 - component.getKey();
+            componentNames.put(componentId, "COH" + iteration + "L0#" + component.getKey());
+            componentElements.put(componentId, component.getValue());
+        }
+        this.xOManager.currentTransaction().begin();
+        Map<Long, Long> nodeIds = createComponents(componentNames, componentElements, typeNames);
+        this.xOManager.currentTransaction().commit();
+        return new HashSet<>(nodeIds.values());
+    }
+
+    /**
+     * Persist the components of a hierarchical decomposition together with their couplings.
+     *
+     * @param componentNames The names of the components by their temporary id, in the order of their creation.
+     * @param componentElements The ids of the elements of the components by their temporary id.
+     * @param typeNames The names of the types by their id.
+     * @param levels The levels of the hierarchy above the level of the types.
+     * @param root The id of the element of the topmost level.
+     *
+     * @return The node id of the topmost element.
+     */
+    private long persistHierarchy(Map<Long, String> componentNames, Map<Long, Set<Long>> componentElements, Map<Long, String> typeNames, List<HierarchyLevel> levels, long root) {
+        LOGGER.info("Persisting " + componentNames.size() + " Components");
         this.xOManager.currentTransaction().begin();
-        Set<Long> identifiedGroups = new HashSet<>();
         ComponentRepository componentRepository = this.xOManager.getRepository(ComponentRepository.class);
-        for (Map.Entry<Long, Set<Long>> component : partitioning.entrySet()) {
-            if (component.getValue().size() == 1 && !typeWrapper) {
-                identifiedGroups.add(component.getValue().iterator().next());
-            } else {
-                ComponentDescriptor componentDescriptor = this.xOManager.create(ComponentDescriptor.class);
-                componentDescriptor.setShape("Component");
-                componentDescriptor.setName("COH" + iteration + "L" + level + "#" + component.getKey());
-                for (Long id : component.getValue()) {
-                    try {
-                        ComponentDescriptor cD = this.xOManager.findById(ComponentDescriptor.class, id);
-                        componentDescriptor.getContainedComponents().add(cD);
-                    } catch (ClassCastException e) {
-                        TypeDescriptor tD = this.xOManager.findById(TypeDescriptor.class, id);
-                        componentDescriptor.getContainedTypes().add(tD);
-                    }
+        Map<Long, Long> nodeIds = createComponents(componentNames, componentElements, typeNames);
+        for (HierarchyLevel level : levels) {
+            List<Map<String, Object>> couplings = new ArrayList<>();
+            level.forEachCoupling((source, target, coupling) -> {
+                // the couplings between types already exist
+                if (source < 0 || target < 0) {
+                    Map<String, Object> row = new HashMap<>(4);
+                    row.put("source", nodeIds.getOrDefault(source, source));
+                    row.put("target", nodeIds.getOrDefault(target, target));
+                    row.put("coupling", coupling);
+                    couplings.add(row);
                 }
-                identifiedGroups.add(this.xOManager.getId(componentDescriptor));
-                Query.Result<TypeDescriptor> typeDescriptors = componentRepository.getContainedTypesRecursively(this.xOManager.getId(componentDescriptor));
-                Map<String, Long> wordCount = new HashMap<>();
-                for (TypeDescriptor typeDescriptor : typeDescriptors) {
-                    String[] words = StringUtils.splitByCharacterTypeCamelCase(typeDescriptor.getName());
-                    for (String word : words) {
-                        if (!word.equals("$") && !word.matches("\\d+")) {
-                            wordCount.merge(
-                                word,
-                                1L,
-                                (w1, w2) -> w1 + 1
-                            );
-                        }
-                    }
+            });
+            componentRepository.setCouplings(couplings);
+        }
+        this.xOManager.currentTransaction().commit();
+        return nodeIds.getOrDefault(root, root);
+    }
+
+    /**
+     * Create components together with the CONTAINS relationships to their elements in batches. The top words of a
+     * component are counted from the names of the types it contains directly or through its contained components.
+     *
+     * @param componentNames The names of the components by their temporary id, contained components first.
+     * @param componentElements The ids of the elements of the components by their temporary id, an element is either
+     *                          a type or a component.
+     * @param typeNames The names of the types by their id.
+     *
+     * @return The node ids of the components by their temporary id.
+     */
+    private Map<Long, Long> createComponents(Map<Long, String> componentNames, Map<Long, Set<Long>> componentElements, Map<Long, String> typeNames) {
+        ComponentRepository componentRepository = this.xOManager.getRepository(ComponentRepository.class);
+        Map<Long, Long> nodeIds = new HashMap<>();
+        // the word counts of the components not contained in another component yet
+        Map<Long, Map<String, Long>> wordCounts = new HashMap<>();
+        List<Map<String, Object>> batch = new ArrayList<>();
+        for (Map.Entry<Long, String> component : componentNames.entrySet()) {
+            Set<Long> elements = componentElements.get(component.getKey());
+            if (elements.stream().anyMatch(e -> componentNames.containsKey(e) && !nodeIds.containsKey(e))) {
+                writeComponents(batch, nodeIds, componentRepository);
+            }
+            Map<String, Long> wordCount = new HashMap<>();
+            for (Long element : elements) {
+                Map<String, Long> elementWordCount = componentNames.containsKey(element) ?
+                    wordCounts.remove(element) :
+                    countWords(typeNames.get(element));
+                elementWordCount.forEach((word, count) -> wordCount.merge(word, count, Long::sum));
+            }
+            wordCounts.put(component.getKey(), wordCount);
+            Map<String, Object> row = new HashMap<>(8);
+            row.put("key", component.getKey());
+            row.put("shape", "Component");
+            row.put("name", component.getValue());
+            row.put("topWords", getTopWords(wordCount));
+            row.put("elements", elements.stream().map(e -> nodeIds.getOrDefault(e, e)).collect(Collectors.toList()));
+            batch.add(row);
+            if (batch.size() >= COMPONENT_BATCH_SIZE) {
+                writeComponents(batch, nodeIds, componentRepository);
+            }
+        }
+        writeComponents(batch, nodeIds, componentRepository);
+        return nodeIds;
+    }
+
+    /**
+     * Write a batch of components together with the CONTAINS relationships to their elements and record their node
+     * ids. Fails if an element of a component does not exist, e.g. a contained component which has not been written
+     * before, as the component would silently miss that element.
+     */
+    private void writeComponents(List<Map<String, Object>> batch, Map<Long, Long> nodeIds, ComponentRepository componentRepository) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try (Query.Result<Map> result = componentRepository.createComponents(batch)) {
+            for (Map component : result) {
+                nodeIds.put((long) component.get("key"), (long) component.get("id"));
+            }
+        }
+        List<Map<String, Object>> elements = new ArrayList<>();
+        for (Map<String, Object> component : batch) {
+            for (Object element : (List<?>) component.get("elements")) {
+                Map<String, Object> row = new HashMap<>(4);
+                row.put("component", nodeIds.get(component.get("key")));
+                row.put("element", element);
+                elements.add(row);
+            }
+        }
+        long contained = componentRepository.createContains(elements);
+        if (contained != elements.size()) {
+            throw new IllegalStateException("Only " + contained + " of " + elements.size() + " contained elements exist");
+        }
+        batch.clear();
+    }
+
+    private static Map<String, Long> countWords(String typeName) {
+        Map<String, Long> wordCount = new HashMap<>();
+        if (typeName != null) {
+            for (String word : StringUtils.splitByCharacterTypeCamelCase(typeName)) {
+                if (!word.equals("$") && !NUMBER.matcher(word).matches()) {
+                    wordCount.merge(word, 1L, Long::sum);
                 }
-                ListMultimap<Long, String> sorted = new ImmutableListMultimap.Builder<Long, String>()
-                    .orderKeysBy(Ordering.natural().reverse())
-                    .putAll(Multimaps.invertFrom(Multimaps.forMap(wordCount), ArrayListMultimap.create()))
-                    .build();
-                componentDescriptor.setTopWords(sorted.entries().stream().limit(10).map(Map.Entry::getValue).toArray(String[]::new));
             }
         }
-        this.xOManager.currentTransaction().commit();
-        return identifiedGroups;
+        return wordCount;
+    }
+
+    private static List<String> getTopWords(Map<String, Long> wordCount) {
+        ListMultimap<Long, String> sorted = new ImmutableListMultimap.Builder<Long, String>()
+            .orderKeysBy(Ordering.natural().reverse())
+            .putAll(Multimaps.invertFrom(Multimaps.forMap(wordCount), ArrayListMultimap.create()))
+            .build();
+        return sorted.entries().stream().limit(10).map(Map.Entry::getValue).collect(Collectors.toList());
     }
 
     private List<Long> getTypeIds() {
-        List<Long> typeIds = new ArrayList<>();
+        return new ArrayList<>(getTypeNames().keySet());
+    }
+
+    /**
+     * @return The names of all internal types by their id.
+     */
+    private Map<Long, String> getTypeNames() {
+        Map<Long, String> typeNames = new LinkedHashMap<>();
         TypeRepository typeRepository = this.xOManager.getRepository(TypeRepository.class);
         try (Query.Result<TypeDescriptor> types = typeRepository.getAllInternalTypes()) {
             for (TypeDescriptor type : types) {
-                typeIds.add(this.xOManager.getId(type));
+                typeNames.put(this.xOManager.getId(type), type.getName());
             }
         }
-        return typeIds;
+        return typeNames;
     }
 
     /**
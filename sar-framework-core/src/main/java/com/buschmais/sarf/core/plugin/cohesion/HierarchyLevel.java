@@ -0,0 +1,158 @@
+package com.buschmais.sarf.core.plugin.cohesion;
+
+import com.buschmais.sarf.core.plugin.cohesion.evolution.Problem;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.similarity.SimilarityProblem;
+import com.buschmais.sarf.core.util.CouplingGraph;
+import com.buschmais.sarf.core.util.LongPairDoubleMap;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The elements of one level of a hierarchical decomposition together with their couplings and, if optimizing the
+ * similarity, their similarities. The next level is derived in memory by contracting the couplings of the components
+ * identified on this level, so that the couplings and similarities of components need not be computed by the database.
+ *
+ * Components which are not persisted yet are identified by negative ids, types by their node id.
+ *
+ * @author Stephan Pirnbaum
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final class HierarchyLevel {
+
+    private final Problem couplings;
+
+    /**
+     * The similarities of the elements, <code>null</code> if optimizing the coupling.
+     */
+    private final Problem similarities;
+
+    /**
+     * The couplings of this and all former levels, i.e. all couplings between the elements of the hierarchy so far,
+     * <code>null</code> if optimizing the coupling.
+     */
+    private final LongPairDoubleMap hierarchyCouplings;
+
+    /**
+     * Creates the first level of a hierarchy.
+     *
+     * @param couplings The couplings of the elements.
+     * @param similarities The similarities of the elements, <code>null</code> if optimizing the coupling.
+     */
+    HierarchyLevel(Problem couplings, Problem similarities) {
+        this(couplings, similarities, similarities != null ? new LongPairDoubleMap() : null);
+        if (this.hierarchyCouplings != null) {
+            forEachCoupling(this.hierarchyCouplings::put);
+        }
+    }
+
+    /**
+     * @return The {@link Problem} to partition the elements of this level.
+     */
+    Problem getProblem() {
+        return this.similarities != null ? this.similarities : this.couplings;
+    }
+
+    /**
+     * Calls the consumer for each coupling between the elements of this level.
+     *
+     * @param consumer The consumer called with the ids of the source and the target and the coupling.
+     */
+    void forEachCoupling(LongPairDoubleMap.PairConsumer consumer) {
+        long[] ids = this.couplings.getIds();
+        for (int element = 0; element < ids.length; element++) {
+            long source = ids[element];
+            this.couplings.forEachOutgoing(element, (neighbour, coupling) -> consumer.accept(source, ids[neighbour], coupling));
+        }
+    }
+
+    /**
+     * Derives the next level whose elements are the given groups of elements of this level. The coupling between two
+     * groups is the sum of the couplings between their elements, relative to the number of pairs of elements if both
+     * groups are components and relative to the size of the component if one group is a single element. Couplings
+     * inside of a component are dropped, the coupling of a single element to itself is kept. The similarity of two
+     * types is kept.
+     *
+     * The similarity of a component to another element is computed from the couplings of all levels, as the queries
+     * formerly used for the next level worked on all COUPLES relationships of the graph. The similarity of a type to a
+     * component therefore also considers its couplings to the types inside of components.
+     *
+     * @param groups The elements of each group by the id of the group, a group of one element has the id of the
+     *               element.
+     *
+     * @return The next level.
+     */
+    HierarchyLevel contract(Map<Long, Set<Long>> groups) {
+        long[] ids = groups.keySet().stream().mapToLong(l -> l).sorted().toArray();
+        int[] sizes = new int[ids.length];
+        int[] assignment = new int[this.couplings.getIds().length];
+        for (int group = 0; group < ids.length; group++) {
+            Set<Long> elements = groups.get(ids[group]);
+            sizes[group] = elements.size();
+            for (long element : elements) {
+                assignment[this.couplings.indexOf(element)] = group;
+            }
+        }
+        LongPairDoubleMap contracted = new LongPairDoubleMap();
+        for (int element = 0; element < assignment.length; element++) {
+            int source = assignment[element];
+            this.couplings.forEachOutgoing(element, (neighbour, coupling) -> {
+                int target = assignment[neighbour];
+                // the coupling inside of a component is not represented on the next level
+                if (source != target || sizes[source] == 1) {
+                    contracted.add(source, target, coupling);
+                }
+            });
+        }
+        Problem nextCouplings = CouplingProblem.newInstance(ids);
+        LongPairDoubleMap directed = new LongPairDoubleMap(contracted.size());
+        contracted.forEach((source, target, coupling) -> {
+            double relative = coupling / normalization(sizes[(int) source], sizes[(int) target]);
+            nextCouplings.addRelation(ids[(int) source], ids[(int) target], relative);
+            directed.put(ids[(int) source], ids[(int) target], relative);
+        });
+        if (this.similarities == null) {
+            return new HierarchyLevel(nextCouplings, null, null);
+        }
+        LongPairDoubleMap nextHierarchyCouplings = new LongPairDoubleMap(this.hierarchyCouplings.size() + directed.size());
+        this.hierarchyCouplings.forEach(nextHierarchyCouplings::put);
+        // the couplings between two elements of this level exist already
+        directed.forEach((source, target, coupling) -> {
+            if (source < 0 || target < 0) {
+                nextHierarchyCouplings.put(source, target, coupling);
+            }
+        });
+        Problem nextSimilarities = SimilarityProblem.newInstance(ids);
+        long[] components = Arrays.stream(ids).filter(id -> id < 0).toArray();
+        new CouplingGraph(nextHierarchyCouplings).computeSimilarities(components, id -> Arrays.binarySearch(ids, id) >= 0, (component, other, similarity) -> {
+            // the similarity between two components is passed for both of them
+            if (other >= 0 || other < component) {
+                nextSimilarities.addRelation(Math.max(component, other), Math.min(component, other), similarity);
+            }
+        });
+        long[] elementIds = this.similarities.getIds();
+        for (int element = 0; element < elementIds.length; element++) {
+            long source = elementIds[element];
+            if (source >= 0 && sizes[assignment[element]] == 1) {
+                this.similarities.forEachOutgoing(element, (neighbour, similarity) -> {
+                    if (elementIds[neighbour] >= 0 && sizes[assignment[neighbour]] == 1) {
+                        nextSimilarities.addRelation(source, elementIds[neighbour], similarity);
+                    }
+                });
+            }
+        }
+        return new HierarchyLevel(nextCouplings, nextSimilarities, nextHierarchyCouplings);
+    }
+
+    private static double normalization(int size1, int size2) {
+        if (size1 == 1 || size2 == 1) {
+            return size1 * size2;
+        }
+        int size = size1 + size2;
+        return size * (size - 1) / 2;
+    }
+}
@@ -0,0 +1,104 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row representation of weighted relations between elements referenced by their dense index. The
+ * neighbours of element i are stored at the positions [offsets[i], offsets[i + 1]) in ascending order, so the memory
+ * needed is proportional to the number of relations. Instances are immutable.
+ *
+ * @author Stephan Pirnbaum
+ */
+final class Adjacency {
+
+    private final int[] offsets;
+
+    private final int[] neighbours;
+
+    private final double[] couplings;
+
+    /**
+     * Creates a new {@link Adjacency} from the given relations. Each pair of elements must only be contained once.
+     *
+     * @param elements The number of elements.
+     * @param from The element owning the relation.
+     * @param to The neighbour of the owning element.
+     * @param couplings The coupling of the relation.
+     * @param count The number of relations.
+     */
+    Adjacency(int elements, int[] from, int[] to, double[] couplings, int count) {
+        // order the relations by neighbour first, so that the stable distribution into rows keeps each row sorted
+        int[] byNeighbour = countingSort(to, elements, identity(count));
+        int[] byElement = countingSort(from, elements, byNeighbour);
+        this.offsets = new int[elements + 1];
+        for (int i = 0; i < count; i++) {
+            this.offsets[from[i] + 1]++;
+        }
+        for (int i = 0; i < elements; i++) {
+            this.offsets[i + 1] += this.offsets[i];
+        }
+        this.neighbours = new int[count];
+        this.couplings = new double[count];
+        for (int i = 0; i < count; i++) {
+            this.neighbours[i] = to[byElement[i]];
+            this.couplings[i] = couplings[byElement[i]];
+        }
+    }
+
+    /**
+     * Calls the consumer for each neighbour of the element.
+     *
+     * @param element The dense index of the element.
+     * @param consumer The {@link Problem.NeighbourConsumer}.
+     */
+    void forEach(int element, Problem.NeighbourConsumer consumer) {
+        for (int i = this.offsets[element]; i < this.offsets[element + 1]; i++) {
+            consumer.accept(this.neighbours[i], this.couplings[i]);
+        }
+    }
+
+    /**
+     * Returns the coupling of the relation between the element and the neighbour.
+     *
+     * @param element The dense index of the element.
+     * @param neighbour The dense index of the neighbour.
+     *
+     * @return The coupling, 0 if the elements are not related.
+     */
+    double get(int element, int neighbour) {
+        int position = Arrays.binarySearch(this.neighbours, this.offsets[element], this.offsets[element + 1], neighbour);
+        return position >= 0 ? this.couplings[position] : 0;
+    }
+
+    /**
+     * @param element The dense index of the element.
+     *
+     * @return The number of neighbours of the element.
+     */
+    int degree(int element) {
+        return this.offsets[element + 1] - this.offsets[element];
+    }
+
+    private static int[] identity(int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static int[] countingSort(int[] keys, int range, int[] order) {
+        int[] starts = new int[range + 1];
+        for (int relation : order) {
+            starts[keys[relation] + 1]++;
+        }
+        for (int i = 0; i < range; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] sorted = new int[order.length];
+        for (int relation : order) {
+            sorted[starts[keys[relation]]++] = relation;
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,229 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map accumulating the coupling between ordered pairs of components. Both component ids are packed
+ * into a single <code>long</code> key, so no objects are allocated per pair.
+ *
+ * @author Stephan Pirnbaum
+ */
+final class ComponentCouplings {
+
+    private static final long FREE = -1L;
+
+    private long[] keys;
+
+    private double[] values;
+
+    /**
+     * The number of element relations contributing to each pair, a pair is removed once no relation contributes.
+     */
+    private int[] counts;
+
+    private int size;
+
+    /**
+     * Creates a new {@link ComponentCouplings} instance.
+     *
+     * @param expectedSize The expected number of component pairs, the map grows if more pairs are added.
+     */
+    ComponentCouplings(int expectedSize) {
+        int capacity = 8;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new double[capacity];
+        this.counts = new int[capacity];
+        Arrays.fill(this.keys, FREE);
+    }
+
+    /**
+     * Creates a copy of the given {@link ComponentCouplings}.
+     *
+     * @param other The instance to copy.
+     */
+    ComponentCouplings(ComponentCouplings other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.counts = other.counts.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * Creates a copy of this instance with the component ids replaced.
+     *
+     * @param mapping The new id of each component, indexed by the old id.
+     *
+     * @return The relabeled {@link ComponentCouplings}.
+     */
+    ComponentCouplings relabel(int[] mapping) {
+        ComponentCouplings relabeled = new ComponentCouplings(this.size);
+        int mask = relabeled.keys.length - 1;
+        for (int i = 0; i < this.keys.length; i++) {
+            long key = this.keys[i];
+            if (key != FREE) {
+                long relabeledKey = pack(mapping[(int) (key >>> 32)], mapping[(int) key]);
+                int slot = slot(relabeledKey, mask);
+                while (relabeled.keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                relabeled.keys[slot] = relabeledKey;
+                relabeled.values[slot] = this.values[i];
+                relabeled.counts[slot] = this.counts[i];
+            }
+        }
+        relabeled.size = this.size;
+        return relabeled;
+    }
+
+    /**
+     * Adds the given coupling to the pair of components.
+     *
+     * @param source The source component.
+     * @param target The target component.
+     * @param coupling The coupling to add.
+     */
+    void add(int source, int target, double coupling) {
+        long key = pack(source, target);
+        int mask = this.keys.length - 1;
+        int slot = slot(key, mask);
+        while (this.keys[slot] != FREE) {
+            if (this.keys[slot] == key) {
+                this.values[slot] += coupling;
+                this.counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = coupling;
+        this.counts[slot] = 1;
+        if (++this.size * 2 > this.keys.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Removes a coupling previously added to the pair of components. The pair is dropped as soon as all added
+     * couplings have been removed.
+     *
+     * @param source The source component.
+     * @param target The target component.
+     * @param coupling The coupling to remove.
+     */
+    void remove(int source, int target, double coupling) {
+        long key = pack(source, target);
+        int mask = this.keys.length - 1;
+        int slot = slot(key, mask);
+        while (this.keys[slot] != key) {
+            if (this.keys[slot] == FREE) {
+                throw new IllegalStateException("No coupling between components " + source + " and " + target);
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (--this.counts[slot] > 0) {
+            this.values[slot] -= coupling;
+            return;
+        }
+        this.size--;
+        // shift back following entries of the probe sequence to close the gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (this.keys[next] != FREE) {
+            int home = slot(this.keys[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                this.counts[gap] = this.counts[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[gap] = FREE;
+        this.values[gap] = 0;
+        this.counts[gap] = 0;
+    }
+
+    /**
+     * Returns the accumulated coupling of the pair of components.
+     *
+     * @param source The source component.
+     * @param target The target component.
+     *
+     * @return The coupling, 0 if none was added.
+     */
+    double get(int source, int target) {
+        long key = pack(source, target);
+        int mask = this.keys.length - 1;
+        int slot = slot(key, mask);
+        while (this.keys[slot] != FREE) {
+            if (this.keys[slot] == key) {
+                return this.values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * @return The number of component pairs.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Visits all component pairs with their accumulated coupling.
+     *
+     * @param consumer The {@link CouplingConsumer} to call for each pair.
+     */
+    void forEach(CouplingConsumer consumer) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            long key = this.keys[slot];
+            if (key != FREE) {
+                consumer.accept((int) (key >>> 32), (int) key, this.values[slot]);
+            }
+        }
+    }
+
+    private void rehash() {
+        long[] oldKeys = this.keys;
+        double[] oldValues = this.values;
+        int[] oldCounts = this.counts;
+        this.keys = new long[oldKeys.length << 1];
+        this.values = new double[oldValues.length << 1];
+        this.counts = new int[oldCounts.length << 1];
+        Arrays.fill(this.keys, FREE);
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i], mask);
+                while (this.keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+                this.counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    static long pack(int source, int target) {
+        return ((long) source << 32) | (target & 0xFFFFFFFFL);
+    }
+
+    static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Consumer for the coupling between two components.
+     */
+    @FunctionalInterface
+    interface CouplingConsumer {
+
+        void accept(int source, int target, double coupling);
+    }
+}
@@ -0,0 +1,55 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The settings of the evolution used by the {@link Partitioner}.
+ *
+ * @author Stephan Pirnbaum
+ */
+@Value
+@Builder
+public class EvolutionSettings {
+
+    /**
+     * The number of generations to evolve each island.
+     */
+    int generations;
+
+    /**
+     * The population size of each island.
+     */
+    int populationSize;
+
+    /**
+     * Whether to optimize the similarity instead of the coupling.
+     */
+    boolean similarityBased;
+
+    /**
+     * The {@link Executor} used by the engines for evaluating and altering, the partitioning is only reproducible with
+     * a sequential executor.
+     */
+    @Builder.Default
+    Executor executor = Runnable::run;
+
+    /**
+     * The number of islands.
+     */
+    @Builder.Default
+    int islands = 1;
+
+    /**
+     * The number of generations between two migrations, values below one are treated as one.
+     */
+    int migrationInterval;
+
+    /**
+     * The {@link TerminationCriterion} stopping the evolution before the number of generations is reached.
+     */
+    @Builder.Default
+    TerminationCriterion termination = TerminationCriterion.generations();
+}
@@ -1,22 +1,50 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution;
 
-import com.buschmais.sarf.core.plugin.cohesion.ElementCoupling;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingBasedFitnessFunction;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.similarity.SimilarityBasedFitnessFunction;
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import io.jenetics.Genotype;
 import io.jenetics.LongGene;
 import io.jenetics.ext.moea.Vec;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
- * Abstract class for the computation of the fitness value of {@link LongObjectiveChromosome}s.
+ * Abstract class for the computation of the fitness value of {@link LongObjectiveChromosome}s. Implementations must be
+ * thread-safe as the evolution engine may evaluate several genotypes concurrently.
+ *
+ * Fitness values are kept in a concurrent cache shared by all threads and keyed by the partitioning a chromosome
+ * represents, independent of the concrete component ids.
  */
 public abstract class FitnessFunction {
 
+    protected final PartitioningContext context;
+
+    private final Cache<Partitioning, Vec<double[]>> cache;
+
+    /**
+     * Creates a new {@link FitnessFunction}.
+     *
+     * @param context The {@link PartitioningContext}.
+     * @param cacheSize The maximum number of cached fitness values, 0 disables the cache.
+     */
+    protected FitnessFunction(PartitioningContext context, long cacheSize) {
+        this.context = context;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @return The hit and miss counts of the fitness cache.
+     */
+    public CacheStats getCacheStats() {
+        return this.cache.stats();
+    }
+
     /**
      * Evaluate the given genotype (whose {@link Genotype#getChromosome()} must return a {@link LongObjectiveChromosome})
      * for its fitness vector consisting of:
@@ -31,8 +59,16 @@ public abstract class FitnessFunction {
      * @return The fitness vector.
      */
     final Vec<double[]> evaluate(Genotype<LongGene> i) {
-        LongObjectiveChromosome chromosome = (LongObjectiveChromosome) i.getChromosome();
-        return evaluate(chromosome);
+        // altered chromosomes are already normalized by the NormalizingAlterer, so this only relabels chromosomes
+        // created by the engine itself, e.g. to fill the initial population
+        LongObjectiveChromosome chromosome = ((LongObjectiveChromosome) i.getChromosome()).normalize();
+        Partitioning partitioning = new Partitioning(chromosome.getAssignment());
+        Vec<double[]> fitness = this.cache.getIfPresent(partitioning);
+        if (fitness == null) {
+            fitness = evaluate(chromosome);
+            this.cache.put(partitioning, fitness);
+        }
+        return fitness;
     }
 
     private Vec<double[]> evaluate(LongObjectiveChromosome chromosome) {
@@ -42,40 +78,45 @@ public abstract class FitnessFunction {
         double cohesiveComponentObjective = 0;
         double componentSizeObjective = 0;
 
-        // mapping from component id to a set of type ids
-        Map<Long, Set<Long>> identifiedComponents = new HashMap<>();
-        for (int i = 0; i < chromosome.length(); i++) {
-            identifiedComponents.merge(
-                chromosome.getGene(i).getAllele(),
-                Sets.newHashSet(Partitioner.ids[i]),
-                (s1, s2) -> {
-                    s1.addAll(s2);
-                    return s1;
-                });
-        }
+        int elementCount = this.context.getIds().length;
+        int[] componentSizes = chromosome.getComponentSizes();
+        double[] cohesions = chromosome.getCohesions();
+        int componentCount = chromosome.getComponentCount();
+        int[] subComponentCounts = chromosome.subComponentCounts();
         int uncohesiveComponents = 0;
         int subComponents = 0;
         int totalSubComponents = 0;
+        int minSize = Integer.MAX_VALUE;
+        int maxSize = 0;
+        int singleElementComponents = 0;
         // compute fitness for intra-edge coupling (cohesiveness of components)
-        for (Map.Entry<Long, Set<Long>> component1 : identifiedComponents.entrySet()) {
-            cohesionObjective += computeCohesion(component1.getValue());
-            if ((subComponents = Problem.getInstance().connectedComponents(component1.getValue()).keySet().size()) > 1) {
+        for (int component = 0; component < componentSizes.length; component++) {
+            int size = componentSizes[component];
+            if (size == 0) {
+                continue;
+            }
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
+            if (size == 1) {
+                singleElementComponents++;
+            }
+            cohesionObjective += normalizeCohesion(cohesions[component], size);
+            if ((subComponents = subComponentCounts[component]) > 1) {
                 uncohesiveComponents++;
                 totalSubComponents += subComponents;
             }
         }
-        for (Map.Entry<ElementCoupling, ElementCoupling> elementCoupling : chromosome.getComponents().entrySet()) {
-            couplingObjective -= elementCoupling.getValue().getCoupling();
-        }
-        couplingObjective = normalizeCoupling(couplingObjective, identifiedComponents.size());
-        cohesionObjective /= identifiedComponents.size();
+        double[] coupling = {0};
+        chromosome.getCouplings().forEach((source, target, c) ->
+            coupling[0] -= c / (componentSizes[source] * componentSizes[target]));
+        couplingObjective = normalizeCoupling(coupling[0], componentCount);
+        cohesionObjective /= componentCount;
         // minimize the difference between min and max component size
-        componentRangeObjective = ((double) (identifiedComponents.values().stream().mapToInt(Set::size).min().orElse(0) -
-            identifiedComponents.values().stream().mapToInt(Set::size).max().orElse(0))) / (Partitioner.ids.length - 1);
+        componentRangeObjective = ((double) (minSize - maxSize)) / (elementCount - 1);
         // punish one-type only components
         //punish un-cohesive components
-        cohesiveComponentObjective = uncohesiveComponents == 0 ? 1 : (totalSubComponents > identifiedComponents.size() ? 0 : (1 - ((double) totalSubComponents) / identifiedComponents.size()));
-        componentSizeObjective = -identifiedComponents.values().stream().mapToInt(Set::size).filter(i -> i == 1).count() / (double) identifiedComponents.size();
+        cohesiveComponentObjective = uncohesiveComponents == 0 ? 1 : (totalSubComponents > componentCount ? 0 : (1 - ((double) totalSubComponents) / componentCount));
+        componentSizeObjective = -singleElementComponents / (double) componentCount;
 
         return Vec.of(
             cohesionObjective,
@@ -102,14 +143,45 @@ public abstract class FitnessFunction {
     protected abstract double normalizeCoupling(double couplingObjective, int size);
 
     /**
-     * Compute the cohesion for the given component based on the strategy.
+     * Normalize the cohesion of a component based on the strategy and component size.
      *
-     * @param elementIds The ids of the element in the component.
+     * @param cohesion The non-normalized cohesion of the component.
+     * @param size The number of elements in the component.
      *
-     * @return The computed non-normalized cohesion
+     * @return The normalized cohesion
      *
      * @see CouplingBasedFitnessFunction
      * @see SimilarityBasedFitnessFunction
      */
-    protected abstract double computeCohesion(Set<Long> elementIds);
+    protected abstract double normalizeCohesion(double cohesion, int size);
+
+    /**
+     * Cache key representing the partitioning of a normalized chromosome. Chromosomes differing only in the ids of their
+     * components have equal assignments once normalized. The assignment of a chromosome is never modified and is
+     * therefore not copied.
+     */
+    private static final class Partitioning {
+
+        private final int[] assignment;
+
+        private final int hash;
+
+        Partitioning(int[] assignment) {
+            this.assignment = assignment;
+            this.hash = Arrays.hashCode(assignment);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Partitioning that = (Partitioning) o;
+            return this.hash == that.hash && Arrays.equals(this.assignment, that.assignment);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.Crossover;
+import io.jenetics.LongGene;
+import io.jenetics.ext.moea.Vec;
+import io.jenetics.util.MSeq;
+import io.jenetics.util.RandomRegistry;
+
+import java.util.Random;
+
+/**
+ * Label-aware crossover for grouping problems. Instead of exchanging genes by position, a randomly chosen component of
+ * each parent is injected into the other parent: its elements are moved to a component id unused by the receiving
+ * parent, all other elements keep their component. The result therefore does not depend on the component ids of the
+ * parents.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class GroupCrossover extends Crossover<LongGene, Vec<double[]>> {
+
+    public GroupCrossover(double probability) {
+        super(probability);
+    }
+
+    @Override
+    protected int crossover(MSeq<LongGene> that, MSeq<LongGene> other) {
+        final Random random = RandomRegistry.getRandom();
+        long[] thatComponents = components(that);
+        long[] otherComponents = components(other);
+        int element = random.nextInt(that.length());
+        // exchange the components containing the chosen element
+        return inject(otherComponents, otherComponents[element], that) +
+            inject(thatComponents, thatComponents[element], other);
+    }
+
+    /**
+     * Moves the elements of a component of the donor into an unused component of the receiver.
+     *
+     * @param donor The components of the donor before the crossover.
+     * @param component The component of the donor to inject.
+     * @param receiver The genes of the receiver.
+     *
+     * @return The number of altered genes.
+     */
+    private static int inject(long[] donor, long component, MSeq<LongGene> receiver) {
+        long target = unusedComponent(receiver);
+        int altered = 0;
+        for (int i = 0; i < donor.length; i++) {
+            if (donor[i] == component && receiver.get(i).getAllele() != target) {
+                receiver.set(i, receiver.get(i).newInstance(target));
+                altered++;
+            }
+        }
+        return altered;
+    }
+
+    private static long[] components(MSeq<LongGene> genes) {
+        long[] components = new long[genes.length()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = genes.get(i).getAllele();
+        }
+        return components;
+    }
+
+    /**
+     * Returns the smallest component id not used by the given genes, or the largest allowed id if all are in use.
+     */
+    private static long unusedComponent(MSeq<LongGene> genes) {
+        long max = genes.get(0).getMax();
+        boolean[] used = new boolean[(int) Math.min(max + 1, genes.length() + 1)];
+        for (int i = 0; i < genes.length(); i++) {
+            long component = genes.get(i).getAllele();
+            if (component < used.length) {
+                used[(int) component] = true;
+            }
+        }
+        for (int component = 0; component < used.length; component++) {
+            if (!used[component]) {
+                return component;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,74 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.LongGene;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.ext.moea.ParetoFront;
+import io.jenetics.ext.moea.Vec;
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * Limit proceeding as long as the hypervolume of the Pareto front improved by at least epsilon within the last
+ * generations. The hypervolume is the area dominated by the front in the (cohesion, coupling) plane, measured from the
+ * worst possible point (0, -1).
+ *
+ * @author Stephan Pirnbaum
+ */
+final class HypervolumeLimit implements Predicate<EvolutionResult<LongGene, Vec<double[]>>> {
+
+    private static final double[] REFERENCE = {0, -1};
+
+    private final double epsilon;
+
+    private final ParetoFront<Vec<double[]>> front = new ParetoFront<>(Vec::dominance);
+
+    /**
+     * The hypervolume of the last generations, used as ring buffer.
+     */
+    private final double[] history;
+
+    private long generation = 0;
+
+    HypervolumeLimit(int generations, double epsilon) {
+        this.history = new double[Math.max(1, generations)];
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public boolean test(EvolutionResult<LongGene, Vec<double[]>> result) {
+        boolean changed = false;
+        for (int i = 0; i < result.getPopulation().size(); i++) {
+            changed |= this.front.add(result.getPopulation().get(i).getFitness());
+        }
+        int slot = (int) (this.generation % this.history.length);
+        double hypervolume = changed || this.generation == 0 ? hypervolume(this.front) : this.history[(int) ((this.generation - 1) % this.history.length)];
+        boolean proceed = this.generation < this.history.length || hypervolume - this.history[slot] >= this.epsilon;
+        this.history[slot] = hypervolume;
+        this.generation++;
+        return proceed;
+    }
+
+    /**
+     * Compute the hypervolume of a two-dimensional front of maximized objectives.
+     *
+     * @param front The non-dominated fitness values.
+     *
+     * @return The dominated area.
+     */
+    static double hypervolume(ParetoFront<Vec<double[]>> front) {
+        double[][] points = front.stream()
+            .map(Vec::data)
+            .sorted(Comparator.comparingDouble((double[] p) -> p[0]).reversed())
+            .toArray(double[][]::new);
+        double area = 0;
+        double covered = REFERENCE[1];
+        for (double[] point : points) {
+            if (point[1] > covered && point[0] > REFERENCE[0]) {
+                area += (point[0] - REFERENCE[0]) * (point[1] - covered);
+                covered = point[1];
+            }
+        }
+        return area;
+    }
+}
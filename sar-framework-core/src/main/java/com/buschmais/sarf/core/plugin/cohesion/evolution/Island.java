@@ -0,0 +1,181 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.Genotype;
+import io.jenetics.LongGene;
+import io.jenetics.Phenotype;
+import io.jenetics.engine.Engine;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.engine.EvolutionStart;
+import io.jenetics.engine.EvolutionStatistics;
+import io.jenetics.ext.moea.ParetoFront;
+import io.jenetics.ext.moea.Vec;
+import io.jenetics.stat.MinMax;
+import io.jenetics.util.ISeq;
+import io.jenetics.util.MSeq;
+import io.jenetics.util.RandomRegistry;
+import lombok.Getter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A population evolved by its own {@link Engine} and random engine. Islands are evolved in rounds, between the rounds
+ * the best members of the islands migrate to their neighbours. An island must only be evolved by one thread at a time.
+ *
+ * The engine of an island must run its tasks through an executor created by {@link Island#withRandom(Executor, Random)}
+ * for the random engine of the island, as {@link RandomRegistry} is thread-local and the engine selects and alters on
+ * the threads of its executor. An evolution is only reproducible with a sequential executor, a concurrent executor
+ * runs the selection of offspring and survivors concurrently, so the order in which they draw from the shared random
+ * engine depends on the scheduling.
+ *
+ * @author Stephan Pirnbaum
+ */
+final class Island {
+
+    private final Engine<LongGene, Vec<double[]>> engine;
+
+    private final Random random;
+
+    private final List<Genotype<LongGene>> initialGenotypes;
+
+    private final int frontSize;
+
+    private final Consumer<EvolutionResult<LongGene, Vec<double[]>>> listener;
+
+    private final Predicate<EvolutionResult<LongGene, Vec<double[]>>> limit;
+
+    /**
+     * Whether the limit stopped the evolution of this island.
+     */
+    @Getter
+    private boolean terminated = false;
+
+    @Getter
+    private final EvolutionStatistics<Vec<double[]>, MinMax<Vec<double[]>>> statistics = EvolutionStatistics.ofComparable();
+
+    /**
+     * The Pareto optimal members found so far.
+     */
+    private final ParetoFront<Phenotype<LongGene, Vec<double[]>>> front =
+        new ParetoFront<>((p1, p2) -> p1.getFitness().dominance(p2.getFitness()));
+
+    /**
+     * The start of the next round, <code>null</code> before the first round.
+     */
+    private EvolutionStart<LongGene, Vec<double[]>> next;
+
+    /**
+     * Creates a new {@link Island}.
+     *
+     * @param engine The {@link Engine}, running its tasks through an executor created by
+     *               {@link Island#withRandom(Executor, Random)} for the given random engine.
+     * @param random The random engine of the island.
+     * @param initialGenotypes The {@link Genotype}s of the initial population.
+     * @param frontSize The maximum size of the Pareto front.
+     * @param listener The listener called for each generation.
+     * @param termination The {@link TerminationCriterion}.
+     */
+    Island(Engine<LongGene, Vec<double[]>> engine, Random random, List<Genotype<LongGene>> initialGenotypes, int frontSize,
+           Consumer<EvolutionResult<LongGene, Vec<double[]>>> listener, TerminationCriterion termination) {
+        this.engine = engine;
+        this.random = random;
+        this.initialGenotypes = initialGenotypes;
+        this.frontSize = frontSize;
+        this.listener = listener;
+        this.limit = termination.newLimit();
+    }
+
+    /**
+     * Wraps the given executor so that each task uses the given random engine, e.g. for selecting and altering on the
+     * threads of the executor.
+     *
+     * @param executor The {@link Executor} running the tasks.
+     * @param random The random engine of the island.
+     *
+     * @return The wrapping {@link Executor}.
+     */
+    static Executor withRandom(Executor executor, Random random) {
+        return task -> executor.execute(() -> RandomRegistry.with(random, r -> {
+            task.run();
+            return null;
+        }));
+    }
+
+    /**
+     * Evolve the population of this island for the given number of generations, continuing where the last round
+     * stopped. The evolution stops earlier if the limit of the {@link TerminationCriterion} is reached, the island is
+     * terminated afterwards. The first generation is evolved in any case, so that the island has a front even if the
+     * limit was reached before, e.g. by a time limit shared with former partitionings.
+     *
+     * @param generations The number of generations.
+     */
+    void evolve(int generations) {
+        if (this.terminated) {
+            return;
+        }
+        EvolutionStart<LongGene, Vec<double[]>> start = this.next;
+        long evolved = RandomRegistry.with(this.random, r ->
+            (start == null ? this.engine.stream(this.initialGenotypes) : this.engine.stream(() -> start))
+                .limit(result -> this.limit.test(result) || this.front.isEmpty())
+                .limit(generations)
+                .peek(this.statistics)
+                .peek(this.listener)
+                .peek(this::record)
+                .count());
+        this.terminated = evolved < generations;
+    }
+
+    private void record(EvolutionResult<LongGene, Vec<double[]>> result) {
+        this.next = result.next();
+        this.front.addAll(result.getPopulation().asList());
+        if (this.front.size() > this.frontSize) {
+            this.front.trim(this.frontSize,
+                (p1, p2, i) -> p1.getFitness().compare(p2.getFitness(), i),
+                (p1, p2, i) -> p1.getFitness().distance(p2.getFitness(), i),
+                p -> p.getFitness().length());
+        }
+    }
+
+    /**
+     * Selects the members of this island which shall migrate to another island.
+     *
+     * @param count The maximum number of emigrants.
+     *
+     * @return The best members of the Pareto front of this island.
+     */
+    List<Phenotype<LongGene, Vec<double[]>>> emigrants(int count) {
+        return this.front.stream()
+            .sorted(Comparator.comparingDouble((Phenotype<LongGene, Vec<double[]>> p) -> Partitioner.sumFitness(p.getFitness())).reversed())
+            .limit(count)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Replaces the worst members of the current population with the given immigrants.
+     *
+     * @param immigrants The members migrating from another island.
+     */
+    void immigrate(List<Phenotype<LongGene, Vec<double[]>>> immigrants) {
+        if (this.next == null || immigrants.isEmpty()) {
+            return;
+        }
+        MSeq<Phenotype<LongGene, Vec<double[]>>> population = this.next.getPopulation().copy();
+        population.sort(Comparator.comparingDouble(p -> Partitioner.sumFitness(p.getFitness())));
+        for (int i = 0; i < immigrants.size() && i < population.size(); i++) {
+            population.set(i, immigrants.get(i));
+        }
+        this.next = EvolutionStart.of(population.toISeq(), this.next.getGeneration());
+    }
+
+    /**
+     * @return The Pareto optimal members found by this island.
+     */
+    ISeq<Phenotype<LongGene, Vec<double[]>>> getFront() {
+        return this.front.toISeq();
+    }
+}
@@ -1,77 +1,290 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution;
 
-import com.buschmais.sarf.core.plugin.cohesion.ElementCoupling;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 import io.jenetics.LongChromosome;
 import io.jenetics.LongGene;
 import io.jenetics.internal.math.random;
 import io.jenetics.util.ISeq;
 import io.jenetics.util.IntRange;
 import io.jenetics.util.MSeq;
+import lombok.AccessLevel;
 import lombok.Getter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Random;
 
 import static io.jenetics.util.RandomRegistry.getRandom;
 import static java.lang.String.format;
 
 /**
+ * Chromosome assigning each element to a component. All derived structures are computed on construction and never
+ * modified afterwards, so instances can safely be shared between the threads of the evolution engine.
+ *
  * @author Stephan Pirnbaum
  */
 public final class LongObjectiveChromosome extends LongChromosome {
 
-    @Getter
-    private Map<ElementCoupling, ElementCoupling> components = new HashMap<>();
+    /**
+     * Chromosomes differing in more than 1/INCREMENTAL_THRESHOLD of the genes from their parent are computed from
+     * scratch.
+     */
+    private static final int INCREMENTAL_THRESHOLD = 4;
 
     @Getter
-    private final Map<Long, Long> elementToComponent = new HashMap<>();
+    private final PartitioningContext context;
+
+    /**
+     * The component of each element, indexed by the dense index of the element.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final int[] assignment;
+
+    /**
+     * The number of elements per component, indexed by the component id.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final int[] componentSizes;
+
+    /**
+     * The number of non-empty components.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final int componentCount;
+
+    /**
+     * The non-normalized cohesion per component, indexed by the component id.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final double[] cohesions;
+
+    /**
+     * The accumulated coupling between distinct components.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final ComponentCouplings couplings;
+
+    /**
+     * The labels of the connected sub-components of each element, computed on first access.
+     */
+    private volatile int[] connectedComponents;
 
     /**
      * Creates a new {@link LongObjectiveChromosome} from the given {@link LongGene}s.
      *
+     * @param context The {@link PartitioningContext} the chromosome belongs to.
      * @param genes The {@link LongGene}s.
      */
-    LongObjectiveChromosome(ISeq<LongGene> genes) {
+    LongObjectiveChromosome(PartitioningContext context, ISeq<LongGene> genes) {
+        super(genes, IntRange.of(genes.length()));
+        this.context = context;
+        this.assignment = new int[genes.length()];
+        int labels = getMax().intValue() + 1;
+        for (int i = 0; i < this.assignment.length; i++) {
+            this.assignment[i] = getGene(i).getAllele().intValue();
+            labels = Math.max(labels, this.assignment[i] + 1);
+        }
+        this.componentSizes = new int[labels];
+        int components = 0;
+        for (int component : this.assignment) {
+            if (this.componentSizes[component]++ == 0) {
+                components++;
+            }
+        }
+        this.componentCount = components;
+        this.cohesions = new double[labels];
+        this.couplings = new ComponentCouplings(components);
+        context.getProblem().accumulate(this.assignment, this.cohesions, this.couplings);
+    }
+
+    /**
+     * Creates a new {@link LongObjectiveChromosome} by moving the given elements of the parent to the component of
+     * their new gene. Only the neighbours of the moved elements are visited.
+     *
+     * @param parent The {@link LongObjectiveChromosome} the genes were derived from.
+     * @param genes The {@link LongGene}s.
+     * @param moved The dense indices of the elements whose component changed.
+     * @param movedCount The number of valid entries in moved.
+     */
+    private LongObjectiveChromosome(LongObjectiveChromosome parent, ISeq<LongGene> genes, int[] moved, int movedCount) {
+        super(genes, IntRange.of(genes.length()));
+        this.context = parent.context;
+        this.assignment = parent.assignment.clone();
+        this.componentSizes = parent.componentSizes.clone();
+        this.cohesions = parent.cohesions.clone();
+        this.couplings = new ComponentCouplings(parent.couplings);
+        int components = parent.componentCount;
+        Problem problem = this.context.getProblem();
+        for (int m = 0; m < movedCount; m++) {
+            int element = moved[m];
+            int from = this.assignment[element];
+            int to = getGene(element).getAllele().intValue();
+            problem.forEachOutgoing(element, (target, coupling) -> {
+                if (target == element) {
+                    this.cohesions[from] -= 2 * coupling;
+                    this.cohesions[to] += 2 * coupling;
+                } else {
+                    move(target, coupling, true, from, to);
+                }
+            });
+            problem.forEachIncoming(element, (source, coupling) -> {
+                if (source != element) {
+                    move(source, coupling, false, from, to);
+                }
+            });
+            this.assignment[element] = to;
+            if (--this.componentSizes[from] == 0) {
+                components--;
+                this.cohesions[from] = 0;
+            }
+            if (this.componentSizes[to]++ == 0) {
+                components++;
+            }
+        }
+        this.componentCount = components;
+    }
+
+    /**
+     * Creates a new {@link LongObjectiveChromosome} representing the same partitioning as the given one with the
+     * components relabeled.
+     *
+     * @param original The original {@link LongObjectiveChromosome}.
+     * @param genes The relabeled {@link LongGene}s.
+     * @param mapping The new id of each component, indexed by the original id.
+     */
+    private LongObjectiveChromosome(LongObjectiveChromosome original, ISeq<LongGene> genes, int[] mapping) {
         super(genes, IntRange.of(genes.length()));
-        init();
+        this.context = original.context;
+        this.assignment = new int[original.assignment.length];
+        for (int i = 0; i < this.assignment.length; i++) {
+            this.assignment[i] = mapping[original.assignment[i]];
+        }
+        this.componentSizes = new int[original.componentSizes.length];
+        this.cohesions = new double[original.cohesions.length];
+        for (int component = 0; component < mapping.length; component++) {
+            if (mapping[component] != -1) {
+                this.componentSizes[mapping[component]] = original.componentSizes[component];
+                this.cohesions[mapping[component]] = original.cohesions[component];
+            }
+        }
+        this.componentCount = original.componentCount;
+        this.couplings = original.couplings.relabel(mapping);
+    }
+
+    /**
+     * Updates the cohesion and coupling of the affected components for a single relation of an element which is moved
+     * from one component to another.
+     *
+     * @param neighbour The dense index of the other element of the relation.
+     * @param coupling The coupling of the relation.
+     * @param outgoing Whether the moved element is the source of the relation.
+     * @param from The component the element is moved from.
+     * @param to The component the element is moved to.
+     */
+    private void move(int neighbour, double coupling, boolean outgoing, int from, int to) {
+        int other = this.assignment[neighbour];
+        if (other == from) {
+            this.cohesions[from] -= 2 * coupling;
+        } else if (outgoing) {
+            this.couplings.remove(from, other, coupling);
+        } else {
+            this.couplings.remove(other, from, coupling);
+        }
+        if (other == to) {
+            this.cohesions[to] += 2 * coupling;
+        } else if (outgoing) {
+            this.couplings.add(to, other, coupling);
+        } else {
+            this.couplings.add(other, to, coupling);
+        }
     }
 
-    private void init() {
-        final Multimap<Long, Long> componentToElements = HashMultimap.create();
-        for (int i = 0; i < this.length(); i++) {
-            long componentId = this.getGene(i).getAllele();
-            long containedId = Partitioner.ids[i];
-            elementToComponent.put(containedId, componentId);
-            componentToElements.put(componentId, containedId);
-        }
-        Map<ElementCoupling, ElementCoupling> couplings = Problem.getInstance().couplings;
-        // for each coupling
-        for (Map.Entry<ElementCoupling, ElementCoupling> coupling : couplings.entrySet()) {
-            // if elements are in different components
-            long sourceComponent = elementToComponent.get(coupling.getValue().getSource());
-            long targetComponent = elementToComponent.get(coupling.getValue().getTarget());
-            if (sourceComponent != targetComponent) {
-                // add coupling between components
-                ElementCoupling elementCoupling = new ElementCoupling(sourceComponent, targetComponent);
-                components.putIfAbsent(elementCoupling, elementCoupling);
-                components.get(elementCoupling).addCoupling(coupling.getValue().getCoupling());
+    /**
+     * Relabels the components in the order of their first element, so that all chromosomes representing the same
+     * partitioning have equal genes.
+     *
+     * @return The normalized chromosome, this chromosome if it is already normalized.
+     */
+    LongObjectiveChromosome normalize() {
+        int[] mapping = new int[this.componentSizes.length];
+        Arrays.fill(mapping, -1);
+        int next = 0;
+        boolean normalized = true;
+        for (int component : this.assignment) {
+            if (mapping[component] == -1) {
+                normalized &= next == component;
+                mapping[component] = next++;
             }
         }
-        // normalize coupling based on component sizes
-        for (ElementCoupling componentCoupling : this.components.values()) {
-            int sourceComponentSize = componentToElements.get(componentCoupling.getSource()).size();
-            int targetComponentSize = componentToElements.get(componentCoupling.getTarget()).size();
-            int denominator = sourceComponentSize * targetComponentSize;
-            componentCoupling.normalizeCoupling(denominator);
+        if (normalized) {
+            return this;
+        }
+        MSeq<LongGene> genes = toSeq().asMSeq();
+        for (int i = 0; i < genes.length(); i++) {
+            genes.set(i, genes.get(i).newInstance((long) mapping[this.assignment[i]]));
         }
+        return new LongObjectiveChromosome(this, genes.toISeq(), mapping);
     }
 
+    /**
+     * Returns the connected sub-components of the components of this chromosome.
+     *
+     * @return The label of the sub-component of each element, indexed by the dense index.
+     *
+     * @see Problem#connectedComponents(int[])
+     */
+    int[] connectedComponents() {
+        int[] labels = this.connectedComponents;
+        if (labels == null) {
+            // computing the labels concurrently is harmless as the result is always the same
+            labels = this.context.getProblem().connectedComponents(this.assignment);
+            this.connectedComponents = labels;
+        }
+        return labels;
+    }
+
+    /**
+     * Counts the connected sub-components per component.
+     *
+     * @return The number of sub-components, indexed by the component id.
+     */
+    int[] subComponentCounts() {
+        int[] labels = connectedComponents();
+        int[] counts = new int[this.componentSizes.length];
+        boolean[] counted = new boolean[labels.length];
+        for (int element = 0; element < labels.length; element++) {
+            if (!counted[labels[element]]) {
+                counted[labels[element]] = true;
+                counts[this.assignment[element]]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Creates a new {@link LongObjectiveChromosome} from the given {@link LongGene}s. If only a few genes differ from
+     * this chromosome, e.g. after a mutation, the derived structures are updated incrementally instead of being
+     * computed from scratch.
+     *
+     * @param genes The {@link LongGene}s.
+     *
+     * @return The new {@link LongObjectiveChromosome}.
+     */
     @Override
     public LongObjectiveChromosome newInstance(ISeq<LongGene> genes) {
-        return new LongObjectiveChromosome(genes);
+        if (genes.length() != this.assignment.length) {
+            return new LongObjectiveChromosome(this.context, genes);
+        }
+        int[] moved = new int[Math.max(1, this.assignment.length / INCREMENTAL_THRESHOLD)];
+        int movedCount = 0;
+        for (int i = 0; i < this.assignment.length; i++) {
+            long component = genes.get(i).getAllele();
+            if (component != this.assignment[i]) {
+                if (movedCount == moved.length || component < 0 || component >= this.componentSizes.length) {
+                    return new LongObjectiveChromosome(this.context, genes);
+                }
+                moved[movedCount++] = i;
+            }
+        }
+        return new LongObjectiveChromosome(this, genes, moved, movedCount);
     }
 
     @Override
@@ -80,7 +293,7 @@ public final class LongObjectiveChromosome extends LongChromosome {
         ISeq<LongGene> longGenes = MSeq.<LongGene>ofLength(random.nextInt(IntRange.of(this.length()), r))
             .fill(() -> LongGene.of(nextLong(r, this.getMin(), this.getMax()), this.getMin(), this.getMax()))
             .toISeq();
-        return new LongObjectiveChromosome(longGenes);
+        return new LongObjectiveChromosome(this.context, longGenes);
     }
 
     /**
@@ -0,0 +1,37 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.Alterer;
+import io.jenetics.AltererResult;
+import io.jenetics.Genotype;
+import io.jenetics.LongGene;
+import io.jenetics.Phenotype;
+import io.jenetics.ext.moea.Vec;
+import io.jenetics.util.MSeq;
+import io.jenetics.util.Seq;
+
+/**
+ * {@link Alterer} relabeling the components of each altered chromosome in the order of their first element. It must be
+ * applied after all other alterers, so that each partitioning is represented by exactly one genotype. As the fitness
+ * does not depend on the component ids, already evaluated fitness values are kept.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class NormalizingAlterer implements Alterer<LongGene, Vec<double[]>> {
+
+    @Override
+    public AltererResult<LongGene, Vec<double[]>> alter(Seq<Phenotype<LongGene, Vec<double[]>>> population, long generation) {
+        MSeq<Phenotype<LongGene, Vec<double[]>>> normalized = population.asMSeq().copy();
+        for (int i = 0; i < normalized.length(); i++) {
+            Phenotype<LongGene, Vec<double[]>> phenotype = normalized.get(i);
+            LongObjectiveChromosome chromosome = (LongObjectiveChromosome) phenotype.getGenotype().getChromosome();
+            LongObjectiveChromosome normalizedChromosome = chromosome.normalize();
+            if (normalizedChromosome != chromosome) {
+                Genotype<LongGene> genotype = Genotype.of(normalizedChromosome);
+                normalized.set(i, phenotype.isEvaluated() ?
+                    Phenotype.of(genotype, phenotype.getGeneration(), phenotype.getFitness()) :
+                    Phenotype.of(genotype, phenotype.getGeneration()));
+            }
+        }
+        return AltererResult.of(normalized.toISeq());
+    }
+}
@@ -8,17 +8,19 @@ import com.google.common.collect.Sets;
 import io.jenetics.*;
 import io.jenetics.engine.Engine;
 import io.jenetics.engine.EvolutionResult;
-import io.jenetics.engine.EvolutionStatistics;
-import io.jenetics.ext.moea.MOEA;
 import io.jenetics.ext.moea.NSGA2Selector;
+import io.jenetics.ext.moea.ParetoFront;
 import io.jenetics.ext.moea.UFTournamentSelector;
 import io.jenetics.ext.moea.Vec;
-import io.jenetics.stat.MinMax;
 import io.jenetics.util.ISeq;
-import io.jenetics.util.RandomRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * @author Stephan Pirnbaum
@@ -26,33 +28,72 @@ import java.util.*;
 @Slf4j
 public class Partitioner {
 
-    static long[] ids;
-
-    public static Map<Long, Set<Long>> partition(long[] ids, Map<Long, Set<Long>> initialPartitioning, int generations, int populationSize, boolean similarityBased) {
-        Partitioner.ids = ids;
-        Genotype<LongGene> genotype = createGenotype(initialPartitioning);
+    /**
+     * The seed of the random engine of the first island, the following islands use the subsequent seeds.
+     */
+    private static final long SEED = 456;
+
+    /**
+     * Factors applied to the mutation probabilities of the islands in turn, so that the islands explore differently.
+     */
+    private static final double[] MUTATION_SCALES = {1, 0.5, 2};
+
+    /**
+     * The share of the population which migrates to the neighbouring island after each round.
+     */
+    private static final double MIGRATION_RATE = 0.1;
+
+    /**
+     * The number of generations of each island whose fitness values fit into the fitness cache.
+     */
+    private static final int FITNESS_CACHE_GENERATIONS = 2;
+
+    /**
+     * Partition the elements of the given context using one or more islands. Each island evolves its own population
+     * with its own random engine and mutation probabilities. Islands are evolved concurrently in rounds of
+     * {@link EvolutionSettings#getMigrationInterval()} generations, after each round the best members of each island
+     * migrate to the next island in a ring.
+     *
+     * @param context The {@link PartitioningContext}.
+     * @param initialPartitioning The partitioning to start with.
+     * @param settings The {@link EvolutionSettings}.
+     *
+     * @return The identified components, mapping the component id to the ids of the contained elements.
+     */
+    public static Map<Long, Set<Long>> partition(PartitioningContext context, Map<Long, Set<Long>> initialPartitioning, EvolutionSettings settings) {
+        int islands = settings.getIslands();
+        int populationSize = settings.getPopulationSize();
+        boolean similarityBased = settings.isSimilarityBased();
+        long[] ids = context.getIds();
+        Genotype<LongGene> genotype = createGenotype(context, initialPartitioning);
 
         FitnessFunction fitnessFunction = similarityBased ?
-            new SimilarityBasedFitnessFunction() :
-            new CouplingBasedFitnessFunction();
-
-        final Engine<LongGene, Vec<double[]>> engine = createEngine(ids, populationSize, similarityBased, genotype, fitnessFunction);
+            new SimilarityBasedFitnessFunction(context, (long) islands * populationSize * FITNESS_CACHE_GENERATIONS) :
+            new CouplingBasedFitnessFunction(context, (long) islands * populationSize * FITNESS_CACHE_GENERATIONS);
 
         List<Genotype<LongGene>> genotypes = Arrays.asList(genotype);
 
-        EvolutionStatistics<Vec<double[]>, MinMax<Vec<double[]>>> statistics = EvolutionStatistics.ofComparable();
+        List<Island> population = new ArrayList<>(islands);
+        for (int i = 0; i < islands; i++) {
+            Random random = new Random(SEED + i);
+            Engine<LongGene, Vec<double[]>> engine = createEngine(ids, populationSize, similarityBased, genotype, fitnessFunction, Island.withRandom(settings.getExecutor(), random), MUTATION_SCALES[i % MUTATION_SCALES.length]);
+            String prefix = islands > 1 ? "Island: " + i + "\t\t" : "";
+            population.add(new Island(engine, random, genotypes, populationSize, r -> update(prefix, r), settings.getTermination()));
+        }
 
-        ISeq<Phenotype<LongGene, Vec<double[]>>> r = executeEvolution(generations, engine, genotypes, statistics);
+        ISeq<Phenotype<LongGene, Vec<double[]>>> r = executeEvolution(settings.getGenerations(), Math.max(1, settings.getMigrationInterval()), (int) Math.ceil(populationSize * MIGRATION_RATE), population);
 
-        System.out.println(statistics);
+        for (Island island : population) {
+            LOGGER.info(island.getStatistics().toString());
+        }
+        LOGGER.info("Fitness Cache: " + fitnessFunction.getCacheStats());
 
         Phenotype<LongGene, Vec<double[]>> best = r.stream()
-            .max(Comparator.comparingDouble(p -> sumFitness(p.getFitness()))).orElse(null);
+            .max(Comparator.comparingDouble(p -> sumFitness(p.getFitness())))
+            .orElseThrow(() -> new IllegalStateException("No partitioning has been evolved within " + settings.getGenerations() + " generations"));
 
         Map<Long, Set<Long>> identifiedComponents = new HashMap<>();
 
-        assert best != null;
-
         for (int i = 0; i < best.getGenotype().getChromosome().length(); i++) {
             identifiedComponents.merge(
                 best.getGenotype().getChromosome().getGene(i).getAllele(),
@@ -66,16 +107,48 @@ public class Partitioner {
         return identifiedComponents;
     }
 
-    private static ISeq<Phenotype<LongGene, Vec<double[]>>> executeEvolution(int generations, Engine<LongGene, Vec<double[]>> engine, List<Genotype<LongGene>> genotypes, EvolutionStatistics<Vec<double[]>, MinMax<Vec<double[]>>> statistics) {
-        return RandomRegistry.with(new Random(456), a -> engine
-            .stream(genotypes)
-            .limit(generations)
-            .peek(statistics)
-            .peek(Partitioner::update)
-            .collect(MOEA.toParetoSet()));
+    private static ISeq<Phenotype<LongGene, Vec<double[]>>> executeEvolution(int generations, int migrationInterval, int migrants, List<Island> islands) {
+        ExecutorService islandExecutor = islands.size() > 1 ? Executors.newFixedThreadPool(islands.size()) : null;
+        try {
+            for (int evolved = 0; evolved < generations && !islands.stream().allMatch(Island::isTerminated); evolved += migrationInterval) {
+                int round = Math.min(migrationInterval, generations - evolved);
+                if (islandExecutor == null) {
+                    islands.forEach(island -> island.evolve(round));
+                } else {
+                    CompletableFuture.allOf(islands.stream()
+                        .map(island -> CompletableFuture.runAsync(() -> island.evolve(round), islandExecutor))
+                        .toArray(CompletableFuture[]::new))
+                        .join();
+                }
+                if (islands.size() > 1 && evolved + round < generations && !islands.stream().allMatch(Island::isTerminated)) {
+                    migrate(islands, migrants);
+                }
+            }
+        } finally {
+            if (islandExecutor != null) {
+                islandExecutor.shutdown();
+            }
+        }
+        return islands.stream()
+            .flatMap(island -> island.getFront().stream())
+            .collect(ParetoFront.toParetoFront((p1, p2) -> p1.getFitness().dominance(p2.getFitness())))
+            .toISeq();
+    }
+
+    /**
+     * Migrate the best members of each island to the next island in the ring.
+     */
+    private static void migrate(List<Island> islands, int migrants) {
+        List<List<Phenotype<LongGene, Vec<double[]>>>> emigrants = islands.stream()
+            .map(island -> island.emigrants(migrants))
+            .collect(Collectors.toList());
+        for (int i = 0; i < islands.size(); i++) {
+            islands.get((i + 1) % islands.size()).immigrate(emigrants.get(i));
+        }
+        LOGGER.info("Migrated " + migrants + " Members between " + islands.size() + " Islands");
     }
 
-    private static Engine<LongGene, Vec<double[]>> createEngine(long[] ids, int populationSize, boolean similarityBased, Genotype<LongGene> genotype, FitnessFunction fitnessFunction) {
+    private static Engine<LongGene, Vec<double[]>> createEngine(long[] ids, int populationSize, boolean similarityBased, Genotype<LongGene> genotype, FitnessFunction fitnessFunction, Executor executor, double mutationScale) {
         return Engine
             .builder(fitnessFunction::evaluate, genotype)
             .offspringFraction(0.7)
@@ -83,19 +156,21 @@ public class Partitioner {
             .offspringSelector(new UFTournamentSelector<>(Vec::dominance, Vec::compare, Vec::distance, Vec::length))
             .populationSize(populationSize)
             .alterers(
-                new SinglePointCrossover<>(0.05),
-                new GaussianMutator<>(0.004 * Math.log10(ids.length) / Math.log10(2)),
+                new GroupCrossover(0.05),
+                new GaussianMutator<>(mutationScale * 0.004 * Math.log10(ids.length) / Math.log10(2)),
                 similarityBased ?
-                    new SimilarityDrivenMutator(0.008 * Math.log10(ids.length) / Math.log10(2)) :
-                    new CouplingDrivenMutator(0.008 * Math.log10(ids.length) / Math.log10(2)),
-                new SplitMutator(1))
-            .executor(Runnable::run)
+                    new SimilarityDrivenMutator(mutationScale * 0.008 * Math.log10(ids.length) / Math.log10(2)) :
+                    new CouplingDrivenMutator(mutationScale * 0.008 * Math.log10(ids.length) / Math.log10(2)),
+                new SplitMutator(1),
+                new NormalizingAlterer())
+            .executor(executor)
             .maximizing()
             .build();
     }
 
-    private static void update(EvolutionResult<LongGene, Vec<double[]>> evolutionResult) {
-        StringBuilder updateString = new StringBuilder("Generation: ")
+    private static void update(String prefix, EvolutionResult<LongGene, Vec<double[]>> evolutionResult) {
+        StringBuilder updateString = new StringBuilder(prefix)
+            .append("Generation: ")
             .append(evolutionResult.getGeneration())
             .append("\t\tBest: ");
         evolutionResult.getPopulation().stream()
@@ -109,7 +184,8 @@ public class Partitioner {
         LOGGER.info(updateString.toString());
     }
 
-    private static Genotype<LongGene> createGenotype(Map<Long, Set<Long>> initialPartitioning) {
+    private static Genotype<LongGene> createGenotype(PartitioningContext context, Map<Long, Set<Long>> initialPartitioning) {
+        long[] ids = context.getIds();
         List<LongGene> genes = new LinkedList<>();
         for (Long id : ids) {
             int compId = 0;
@@ -125,12 +201,12 @@ public class Partitioner {
                 genes.add(LongGene.of(compId, 0, ids.length / 2 - 1));
             }
         }
-        Chromosome<LongGene> chromosome = new LongObjectiveChromosome(ISeq.of(genes));
+        Chromosome<LongGene> chromosome = new LongObjectiveChromosome(context, ISeq.of(genes)).normalize();
 
         return Genotype.of(chromosome);
     }
 
-    private static double sumFitness(Vec<double[]> vec) {
+    static double sumFitness(Vec<double[]> vec) {
         return vec.data()[0] + vec.data()[1];// + vec.data()[2] + vec.data()[3] + vec.data()[4];
     }
 }
@@ -0,0 +1,31 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The state of a single partitioning run which is shared by the chromosomes, mutators and fitness functions of one
+ * evolution engine. Separate contexts allow several partitionings to be computed concurrently in the same JVM.
+ *
+ * @author Stephan Pirnbaum
+ */
+@RequiredArgsConstructor
+public final class PartitioningContext {
+
+    /**
+     * The relations between the elements to partition.
+     */
+    @Getter
+    private final Problem problem;
+
+    /**
+     * Returns the ids of the elements to partition, the element at index i is represented by the i-th gene of a
+     * chromosome.
+     *
+     * @return The ids of the elements.
+     */
+    public long[] getIds() {
+        return this.problem.getIds();
+    }
+
+}
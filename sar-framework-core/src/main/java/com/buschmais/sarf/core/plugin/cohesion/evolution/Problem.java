@@ -1,66 +1,279 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution;
 
-import com.buschmais.sarf.core.plugin.cohesion.ElementCoupling;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
 import com.buschmais.sarf.core.plugin.cohesion.evolution.similarity.SimilarityProblem;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
-import mikera.matrixx.AMatrix;
-import mikera.matrixx.impl.SparseRowMatrix;
+import com.buschmais.sarf.core.util.LongPairDoubleMap;
+import lombok.Getter;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 
 /**
+ * The relations between the elements to partition. A problem is only modified while being loaded, afterwards it is
+ * accessed read-only and may be shared between the threads of the evolution engine.
+ *
+ * Besides their id, elements are addressed by a dense index in the range [0, n) which is the position of the id in
+ * {@link Problem#getIds()} and also the index of the gene representing the element in a {@link LongObjectiveChromosome}.
+ *
  * @author Stephan Pirnbaum
  */
 public abstract class Problem {
 
-    protected AMatrix relations;
+    /**
+     * The ids of the elements, the position of an id is the dense index of the element.
+     */
+    @Getter
+    private final long[] ids;
+
+    /**
+     * The ids in ascending order together with their dense index, used for mapping ids to indices.
+     */
+    private final long[] sortedIds;
 
-    protected Map<ElementCoupling, ElementCoupling> couplings;
+    private final int[] sortedIndices;
 
     /**
-     * Mapping from an element which is referenced by its id as in {@link Partitioner#ids} to the element to which it is
-     * coupled the most.
+     * The relations between the elements referenced by their dense index, only needed while loading the problem.
      */
-    private Map<Long, ElementCoupling> highestCoupling = new HashMap<>();
+    private LongPairDoubleMap relations = new LongPairDoubleMap();
 
-    private static Problem instance;
+    /**
+     * The relations between the elements referenced by their dense index, copied from the map of relations when the
+     * problem is accessed for the first time.
+     */
+    private int[] relationSources;
 
-    protected Problem(int rows, int columns) {
-        this.relations = SparseRowMatrix.create(rows, columns);
-        couplings = new HashMap<>();
-    }
+    private int[] relationTargets;
+
+    private double[] relationCouplings;
+
+    private int relationCount;
+
+    /**
+     * The outgoing and incoming relations per element, built on first access after the problem has been loaded.
+     */
+    private volatile Adjacency outgoing;
+
+    private Adjacency incoming;
+
+    /**
+     * Mapping from the dense index of an element to the dense index of the element to which it is coupled the most, -1
+     * if the element is not coupled at all.
+     */
+    private final int[] strongestCoupledElements;
 
-    public static Problem getInstance() {
-        return Problem.instance;
+    private final double[] strongestCouplings;
+
+    protected Problem(long[] ids) {
+        this.ids = ids;
+        this.sortedIds = new long[ids.length];
+        this.sortedIndices = new int[ids.length];
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Long.compare(ids[i1], ids[i2]));
+        for (int i = 0; i < order.length; i++) {
+            this.sortedIds[i] = ids[order[i]];
+            this.sortedIndices[i] = order[i];
+        }
+        this.strongestCoupledElements = new int[ids.length];
+        this.strongestCouplings = new double[ids.length];
+        Arrays.fill(this.strongestCoupledElements, -1);
     }
 
-    public static Problem newInstance(int rows, int columns, boolean similarityBased) {
-        Problem.instance =
-                similarityBased ?
-                        SimilarityProblem.newInstance(rows, columns) :
-                        CouplingProblem.newInstance(rows, columns);
-        return Problem.instance;
+    public static Problem newInstance(long[] ids, boolean similarityBased) {
+        return similarityBased ?
+                SimilarityProblem.newInstance(ids) :
+                CouplingProblem.newInstance(ids);
     }
 
+    /**
+     * Adds a relation between two elements, a previously added relation between the same elements is replaced.
+     * Relations must be added before the relations of the problem are accessed for the first time.
+     *
+     * @param from The id of the source element.
+     * @param to The id of the target element.
+     * @param coupling The coupling of the relation.
+     */
     public void addRelation(long from, long to, double coupling) {
-        this.relations.set((int) from, (int) to, coupling);
-        ElementCoupling eC = new ElementCoupling(from, coupling, to);
+        if (this.outgoing != null) {
+            throw new IllegalStateException("Relations cannot be added after the problem has been accessed.");
+        }
+        int source = indexOf(from);
+        int target = indexOf(to);
+        if (source < 0 || target < 0) {
+            return;
+        }
         // todo multiple best coupled elements?
         // todo bi-directionality?
-        if (this.highestCoupling.containsKey(from)) {
-            if (this.highestCoupling.get(from).getCoupling() < coupling) {
-                this.highestCoupling.put(from, eC);
+        if (this.strongestCoupledElements[source] == -1 || this.strongestCouplings[source] < coupling) {
+            this.strongestCoupledElements[source] = target;
+            this.strongestCouplings[source] = coupling;
+        }
+        this.relations.put(source, target, coupling);
+    }
+
+    /**
+     * Returns the dense index of the element with the given id.
+     *
+     * @param id The id of the element.
+     *
+     * @return The dense index or -1 if the element is not part of the problem.
+     */
+    public int indexOf(long id) {
+        int position = Arrays.binarySearch(this.sortedIds, id);
+        return position >= 0 ? this.sortedIndices[position] : -1;
+    }
+
+    /**
+     * Compute the non-normalized cohesion of all components of a partitioning in a single pass over the relations.
+     *
+     * @param assignment The component of each element, indexed by the dense index.
+     * @param components The number of component ids, i.e. the largest component id + 1.
+     *
+     * @return The cohesion indexed by the component id.
+     */
+    public double[] computeCohesions(int[] assignment, int components) {
+        double[] cohesions = new double[components];
+        accumulate(assignment, cohesions, null);
+        return cohesions;
+    }
+
+    /**
+     * Accumulates the couplings inside of and between the components of a partitioning by visiting each relation once.
+     * The cohesion of a component considers both directions of a relation, as if summing the coupling of each element
+     * to its component.
+     *
+     * @param assignment The component of each element, indexed by the dense index.
+     * @param cohesions The cohesion per component id to add to.
+     * @param couplings The coupling between distinct components to add to, may be <code>null</code>.
+     */
+    void accumulate(int[] assignment, double[] cohesions, ComponentCouplings couplings) {
+        outgoing();
+        for (int relation = 0; relation < this.relationCount; relation++) {
+            int sourceComponent = assignment[this.relationSources[relation]];
+            int targetComponent = assignment[this.relationTargets[relation]];
+            if (sourceComponent == targetComponent) {
+                cohesions[sourceComponent] += 2 * this.relationCouplings[relation];
+            } else if (couplings != null) {
+                couplings.add(sourceComponent, targetComponent, this.relationCouplings[relation]);
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer for each element the given element has a relation to.
+     *
+     * @param element The dense index of the source element.
+     * @param consumer The consumer called with the dense index of the target and the coupling.
+     */
+    public void forEachOutgoing(int element, NeighbourConsumer consumer) {
+        outgoing().forEach(element, consumer);
+    }
+
+    /**
+     * Calls the consumer for each element having a relation to the given element.
+     *
+     * @param element The dense index of the target element.
+     * @param consumer The consumer called with the dense index of the source and the coupling.
+     */
+    public void forEachIncoming(int element, NeighbourConsumer consumer) {
+        incoming().forEach(element, consumer);
+    }
+
+    /**
+     * Returns the coupling of the relation between two elements.
+     *
+     * @param from The dense index of the source element.
+     * @param to The dense index of the target element.
+     *
+     * @return The coupling, 0 if there is no relation.
+     */
+    public double getCoupling(int from, int to) {
+        Adjacency out = outgoing();
+        Adjacency in = this.incoming;
+        // search the shorter of both rows
+        return out.degree(from) <= in.degree(to) ? out.get(from, to) : in.get(to, from);
+    }
+
+    /**
+     * Returns the coupling of the relation between two elements referenced by their id.
+     *
+     * @param from The id of the source element.
+     * @param to The id of the target element.
+     *
+     * @return The coupling, 0 if there is no relation or one of the elements is not part of the problem.
+     */
+    protected double getCoupling(long from, long to) {
+        int source = indexOf(from);
+        int target = indexOf(to);
+        return source < 0 || target < 0 ? 0 : getCoupling(source, target);
+    }
+
+    /**
+     * Sums the couplings in both directions between each element of the first and each element of the second group.
+     *
+     * @param from The ids of the first group.
+     * @param to The ids of the second group.
+     *
+     * @return The summed coupling.
+     */
+    protected double sumCouplings(Collection<Long> from, Collection<Long> to) {
+        boolean[] contained = new boolean[this.ids.length];
+        for (long id : to) {
+            int element = indexOf(id);
+            if (element >= 0) {
+                contained[element] = true;
+            }
+        }
+        double[] coupling = {0};
+        NeighbourConsumer sum = (neighbour, c) -> {
+            if (contained[neighbour]) {
+                coupling[0] += c;
             }
-        } else {
-            this.highestCoupling.put(from, eC);
+        };
+        for (long id : from) {
+            int element = indexOf(id);
+            if (element >= 0) {
+                forEachOutgoing(element, sum);
+                forEachIncoming(element, sum);
+            }
+        }
+        return coupling[0];
+    }
+
+    private Adjacency outgoing() {
+        Adjacency out = this.outgoing;
+        return out != null ? out : buildAdjacency();
+    }
+
+    private Adjacency incoming() {
+        outgoing();
+        return this.incoming;
+    }
+
+    private synchronized Adjacency buildAdjacency() {
+        if (this.outgoing == null) {
+            int count = this.relations.size();
+            int[] sources = new int[count];
+            int[] targets = new int[count];
+            double[] couplings = new double[count];
+            int[] position = {0};
+            this.relations.forEach((source, target, coupling) -> {
+                sources[position[0]] = (int) source;
+                targets[position[0]] = (int) target;
+                couplings[position[0]++] = coupling;
+            });
+            this.relationSources = sources;
+            this.relationTargets = targets;
+            this.relationCouplings = couplings;
+            this.relationCount = count;
+            this.relations = null;
+            this.incoming = new Adjacency(this.ids.length, targets, sources, couplings, count);
+            this.outgoing = new Adjacency(this.ids.length, sources, targets, couplings, count);
         }
-        this.couplings.put(eC, eC);
+        return this.outgoing;
     }
 
     public abstract double computeCouplingTo(long from, Collection<Long> to);
@@ -69,39 +282,93 @@ public abstract class Problem {
 
     public abstract double computeCouplingBetweenComponents(Collection<Long> ids1, Collection<Long> ids2);
 
-    public Multimap<Long, Long> connectedComponents(Collection<Long> ids) {
-        Collection<Long> idCopy = Sets.newHashSet(ids);
-        Multimap<Long, Long> connectedComponents = HashMultimap.create();
-        long compId = 0;
-        while (connectedComponents.size() < ids.size()) {
-            Long id = idCopy.iterator().next();
-            Set<Long> identified = Sets.newHashSet(id);
-            getConnectedNodes(id, idCopy, identified);
-            idCopy.removeAll(identified);
-            connectedComponents.putAll(compId, identified);
-            compId++;
-        }
-        return connectedComponents;
+    /**
+     * Compute the coupling of an element to the elements of a component.
+     *
+     * @param from The dense index of the element.
+     * @param assignment The component of each element, indexed by the dense index.
+     * @param component The component.
+     *
+     * @return The sum of the relations in both directions.
+     */
+    public double computeCouplingTo(int from, int[] assignment, int component) {
+        double[] coupling = {0};
+        NeighbourConsumer sum = (neighbour, c) -> {
+            if (assignment[neighbour] == component) {
+                coupling[0] += c;
+            }
+        };
+        forEachOutgoing(from, sum);
+        forEachIncoming(from, sum);
+        return coupling[0];
     }
 
-    public void getConnectedNodes(long from, Collection<Long> ids, Set<Long> identified) {
-        for (long id : ids) {
-            if (!identified.contains(id) && areConnected(from, id)) {
-                identified.add(id);
-                if (identified.size() < ids.size()) {
-                    getConnectedNodes(id, ids, identified);
-                } else {
-                    break;
+    /**
+     * Identify the connected sub-components of all components of a partitioning. Two elements are connected if they are
+     * in the same component and there is a relation with positive coupling between them in either direction.
+     *
+     * @param assignment The component of each element, indexed by the dense index.
+     *
+     * @return The label of the connected sub-component of each element, labels are numbered from 0 in the order of
+     * their first element.
+     */
+    public int[] connectedComponents(int[] assignment) {
+        int[] parents = new int[assignment.length];
+        for (int element = 0; element < parents.length; element++) {
+            parents[element] = element;
+        }
+        for (int element = 0; element < parents.length; element++) {
+            int from = element;
+            forEachOutgoing(from, (to, coupling) -> {
+                if (coupling > 0 && assignment[from] == assignment[to]) {
+                    int fromRoot = find(parents, from);
+                    int toRoot = find(parents, to);
+                    if (fromRoot != toRoot) {
+                        parents[Math.max(fromRoot, toRoot)] = Math.min(fromRoot, toRoot);
+                    }
                 }
-            }
+            });
         }
+        int labelCount = 0;
+        int[] labels = new int[parents.length];
+        for (int element = 0; element < parents.length; element++) {
+            int root = find(parents, element);
+            // roots are always the smallest element of their set and therefore labeled first
+            labels[element] = root == element ? labelCount++ : labels[root];
+        }
+        return labels;
+    }
+
+    private static int find(int[] parents, int element) {
+        while (parents[element] != element) {
+            // path halving
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
     }
 
     public boolean areConnected(long id1, long id2) {
-        return this.relations.get(id1, id2) > 0 || this.relations.get(id2, id1) > 0;
+        return getCoupling(id1, id2) > 0 || getCoupling(id2, id1) > 0;
     }
 
-    public long getStrongestCoupledElement(long forElement) {
-        return this.highestCoupling.get(forElement) != null ? this.highestCoupling.get(forElement).getTarget() : -1;
+    /**
+     * Returns the element to which the given element is coupled the most.
+     *
+     * @param forElement The dense index of the element.
+     *
+     * @return The dense index of the strongest coupled element or -1 if the element has no outgoing relations.
+     */
+    public int getStrongestCoupledElement(int forElement) {
+        return this.strongestCoupledElements[forElement];
+    }
+
+    /**
+     * Consumer for the neighbours of an element.
+     */
+    @FunctionalInterface
+    public interface NeighbourConsumer {
+
+        void accept(int neighbour, double coupling);
     }
 }
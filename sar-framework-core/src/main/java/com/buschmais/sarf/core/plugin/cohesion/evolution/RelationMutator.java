@@ -1,16 +1,12 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 import io.jenetics.Genotype;
 import io.jenetics.LongGene;
 import io.jenetics.Mutator;
 import io.jenetics.MutatorResult;
 import io.jenetics.ext.moea.Vec;
 import io.jenetics.util.MSeq;
-import io.jenetics.util.RandomRegistry;
 
-import java.util.Objects;
 import java.util.Random;
 
 /**
@@ -26,29 +22,27 @@ public abstract class RelationMutator extends Mutator<LongGene, Vec<double[]>> {
     protected MutatorResult<Genotype<LongGene>> mutate(Genotype<LongGene> genotype, double p, Random random) {
         int mutated = 0;
         LongObjectiveChromosome chromosome = (LongObjectiveChromosome) genotype.getChromosome();
-        MSeq<LongGene> seq = chromosome.newInstance().toSeq().asMSeq();
-        Multimap<Long, Long> componentToTypes = HashMultimap.create();
-        for (int i = 0; i < seq.length(); i++) {
-            componentToTypes.put(seq.get(i).getAllele(), Partitioner.ids[i]);
-        }
+        Problem problem = chromosome.getContext().getProblem();
+        MSeq<LongGene> seq = chromosome.toSeq().asMSeq();
+        int[] componentSizes = chromosome.getComponentSizes();
+        int[] assignment = chromosome.getAssignment();
+        double threshold = 0.008 * Math.log10(seq.length()) / Math.log10(2);
         for (int i = 0; i < seq.size(); i++) {
-            Long componentId = seq.get(i).getAllele();
-            long elementId = Partitioner.ids[i];
-            boolean probabilityMatch = RandomRegistry.getRandom().nextDouble() < (0.008 * Math.log10(Partitioner.ids.length) / Math.log10(2));
-            boolean sizeMatch = componentToTypes.get(componentId).size() == 1;
-            boolean couplingMatch = Problem.getInstance().computeCouplingTo(elementId, componentToTypes.get(componentId)) == 0;
-            if (probabilityMatch || sizeMatch || couplingMatch) {
-                long strongestCoupledElement = Problem.getInstance().getStrongestCoupledElement(elementId);
+            int componentId = seq.get(i).getAllele().intValue();
+            boolean probabilityMatch = random.nextDouble() < threshold;
+            boolean sizeMatch = componentSizes[componentId] == 1;
+            if (probabilityMatch || sizeMatch || problem.computeCouplingTo(i, assignment, componentId) == 0) {
+                int strongestCoupledElement = problem.getStrongestCoupledElement(i);
                 if (strongestCoupledElement != -1) {
-                    long newComponentId = chromosome.getElementToComponent().get(strongestCoupledElement);
-                    if (!Objects.equals(componentId, newComponentId)) {
+                    int newComponentId = assignment[strongestCoupledElement];
+                    if (componentId != newComponentId) {
                         seq.set(i, LongGene.of(newComponentId, seq.get(i).getMin(), seq.get(i).getMax()));
                         mutated++;
                     }
                 }
             }
         }
-        LongObjectiveChromosome newChromosome = new LongObjectiveChromosome(seq.asISeq());
+        LongObjectiveChromosome newChromosome = chromosome.newInstance(seq.toISeq());
 
         return MutatorResult.of(Genotype.of(newChromosome), mutated);
     }
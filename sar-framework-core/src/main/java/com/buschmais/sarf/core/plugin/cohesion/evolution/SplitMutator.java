@@ -1,7 +1,5 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 import io.jenetics.Genotype;
 import io.jenetics.LongGene;
 import io.jenetics.Mutator;
@@ -10,7 +8,7 @@ import io.jenetics.ext.moea.Vec;
 import io.jenetics.util.MSeq;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -28,35 +26,37 @@ public class SplitMutator extends Mutator<LongGene, Vec<double[]>> {
         int mutated = 0;
         LongObjectiveChromosome chromosome = (LongObjectiveChromosome) genotype.getChromosome();
         MSeq<LongGene> seq = chromosome.toSeq().asMSeq();
-        Multimap<Long, Long> componentToTypes = HashMultimap.create();
-        for (int i = 0; i < seq.length(); i++) {
-            componentToTypes.put(seq.get(i).getAllele(), Partitioner.ids[i]);
-        }
+        int[] assignment = chromosome.getAssignment();
+        int[] componentSizes = chromosome.getComponentSizes();
+        int[] labels = chromosome.connectedComponents();
         List<Long> unusedComponentIds = new ArrayList<>();
-        for (long i = 0; i < seq.get(0).getMax(); i++) {
-            if (!componentToTypes.keySet().contains(i)) {
-                unusedComponentIds.add(i);
+        for (int i = 0; i < seq.get(0).getMax(); i++) {
+            if (i >= componentSizes.length || componentSizes[i] == 0) {
+                unusedComponentIds.add((long) i);
             }
         }
-        outer: for (Long component : componentToTypes.keySet()) {
-            Multimap<Long, Long> connectedComponents = Problem.getInstance().connectedComponents(componentToTypes.get(component));
-            if (connectedComponents.keySet().size() > 1) {
-                boolean first = true;
-                for (long c : connectedComponents.keySet()) {
-                    Collection<Long> types = connectedComponents.get(c);
-                    if (unusedComponentIds.size() == 0) break outer;
-                    for (int i = 0; i < Partitioner.ids.length; i++) {
-                        if (types.contains(Partitioner.ids[i])) {
-                            seq.set(i, seq.get(i).newInstance(first ? component : unusedComponentIds.get(0)));
-                            mutated++;
-                        }
-                    }
-                    if (!first) unusedComponentIds.remove(0);
-                    first = false;
+        // the first sub-component of each component keeps its id, all further ones are moved to unused ids
+        boolean[] componentSeen = new boolean[componentSizes.length];
+        long[] labelComponentIds = new long[labels.length];
+        Arrays.fill(labelComponentIds, -1);
+        for (int i = 0; i < labels.length; i++) {
+            int label = labels[i];
+            if (labelComponentIds[label] == -1) {
+                if (!componentSeen[assignment[i]]) {
+                    componentSeen[assignment[i]] = true;
+                    labelComponentIds[label] = assignment[i];
+                } else if (!unusedComponentIds.isEmpty()) {
+                    labelComponentIds[label] = unusedComponentIds.remove(0);
+                } else {
+                    labelComponentIds[label] = assignment[i];
                 }
             }
+            if (labelComponentIds[label] != assignment[i]) {
+                seq.set(i, seq.get(i).newInstance(labelComponentIds[label]));
+                mutated++;
+            }
         }
-        LongObjectiveChromosome newChromosome = new LongObjectiveChromosome(seq.asISeq());
+        LongObjectiveChromosome newChromosome = chromosome.newInstance(seq.toISeq());
 
         return MutatorResult.of(Genotype.of(newChromosome), mutated);
     }
@@ -0,0 +1,36 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.LongGene;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.ext.moea.ParetoFront;
+import io.jenetics.ext.moea.Vec;
+
+import java.util.function.Predicate;
+
+/**
+ * Limit proceeding as long as the Pareto front of the fitness values changed within the last generations.
+ *
+ * @author Stephan Pirnbaum
+ */
+final class SteadyParetoFrontLimit implements Predicate<EvolutionResult<LongGene, Vec<double[]>>> {
+
+    private final int generations;
+
+    private final ParetoFront<Vec<double[]>> front = new ParetoFront<>(Vec::dominance);
+
+    private int steadyGenerations = 0;
+
+    SteadyParetoFrontLimit(int generations) {
+        this.generations = generations;
+    }
+
+    @Override
+    public boolean test(EvolutionResult<LongGene, Vec<double[]>> result) {
+        boolean changed = false;
+        for (int i = 0; i < result.getPopulation().size(); i++) {
+            changed |= this.front.add(result.getPopulation().get(i).getFitness());
+        }
+        this.steadyGenerations = changed ? 0 : this.steadyGenerations + 1;
+        return this.steadyGenerations < this.generations;
+    }
+}
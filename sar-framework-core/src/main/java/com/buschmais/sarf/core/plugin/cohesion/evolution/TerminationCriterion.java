@@ -0,0 +1,63 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.LongGene;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.ext.moea.Vec;
+
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * Criterion for stopping the evolution of an island before the maximum number of generations is reached.
+ *
+ * @author Stephan Pirnbaum
+ */
+@FunctionalInterface
+public interface TerminationCriterion {
+
+    /**
+     * Creates the limit for a single island. Limits may be stateful and are therefore never shared between islands.
+     *
+     * @return A predicate returning <code>true</code> as long as the evolution shall proceed.
+     */
+    Predicate<EvolutionResult<LongGene, Vec<double[]>>> newLimit();
+
+    /**
+     * @return A criterion which only stops at the maximum number of generations.
+     */
+    static TerminationCriterion generations() {
+        return () -> result -> true;
+    }
+
+    /**
+     * @param generations The number of generations.
+     *
+     * @return A criterion stopping if the Pareto front did not change for the given number of generations.
+     */
+    static TerminationCriterion steadyFitness(int generations) {
+        return () -> new SteadyParetoFrontLimit(generations);
+    }
+
+    /**
+     * @param generations The number of generations.
+     * @param epsilon The minimal improvement.
+     *
+     * @return A criterion stopping if the hypervolume of the Pareto front improved by less than epsilon within the
+     * given number of generations.
+     */
+    static TerminationCriterion hypervolume(int generations, double epsilon) {
+        return () -> new HypervolumeLimit(generations, epsilon);
+    }
+
+    /**
+     * @param duration The wall-clock budget, measured from the creation of the criterion. The budget is shared by all
+     *                 islands of all partitionings using the criterion, so it covers e.g. all levels of a hierarchical
+     *                 decomposition.
+     *
+     * @return A criterion stopping once the given duration has elapsed.
+     */
+    static TerminationCriterion timeLimit(Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        return () -> result -> System.nanoTime() - deadline < 0;
+    }
+}
@@ -1,16 +1,18 @@
 package com.buschmais.sarf.core.plugin.cohesion.evolution.coupling;
 
 import com.buschmais.sarf.core.plugin.cohesion.evolution.FitnessFunction;
-import com.buschmais.sarf.core.plugin.cohesion.evolution.Problem;
-
-import java.util.Set;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.PartitioningContext;
 
 public class CouplingBasedFitnessFunction extends FitnessFunction {
 
+    public CouplingBasedFitnessFunction(PartitioningContext context, long cacheSize) {
+        super(context, cacheSize);
+    }
+
     @Override
-    protected double computeCohesion(Set<Long> elementIds) {
-        int denominator = elementIds.size() == 1 ? 1 : ((elementIds.size() * (elementIds.size() - 1)) / 2);
-        return Problem.getInstance().computeCohesionInComponent(elementIds) / denominator;
+    protected double normalizeCohesion(double cohesion, int size) {
+        int denominator = size == 1 ? 1 : ((size * (size - 1)) / 2);
+        return cohesion / denominator;
     }
 
     @Override
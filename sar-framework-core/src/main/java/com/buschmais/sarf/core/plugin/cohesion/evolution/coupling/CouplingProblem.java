@@ -9,42 +9,31 @@ import java.util.Collection;
  */
 public class CouplingProblem extends Problem {
 
-    private CouplingProblem(int rows, int columns) {
-        super(rows, columns);
+    private CouplingProblem(long[] ids) {
+        super(ids);
     }
 
     @Override
     public double computeCouplingTo(long from, Collection<Long> to) {
         double coupling = 0;
         for (long id : to) {
-            coupling += this.relations.get(from, id);
-            coupling += this.relations.get(id, from);
+            coupling += getCoupling(from, id);
+            coupling += getCoupling(id, from);
         }
         return coupling;
     }
 
     @Override
     public double computeCohesionInComponent(Collection<Long> ids) {
-        double coupling = 0;
-        for (long id : ids) {
-            coupling += computeCouplingTo(id, ids);
-        }
-        return coupling;
+        return sumCouplings(ids, ids);
     }
 
     @Override
     public double computeCouplingBetweenComponents(Collection<Long> ids1, Collection<Long> ids2) {
-        double coupling = 0;
-        for (long id1 : ids1) {
-            coupling += computeCouplingTo(id1, ids2);
-        }
-        for (long id2 : ids2) {
-            coupling += computeCouplingTo(id2, ids1);
-        }
-        return coupling;
+        return sumCouplings(ids1, ids2) + sumCouplings(ids2, ids1);
     }
 
-    public static Problem newInstance(int rows, int columns) {
-        return new CouplingProblem(rows, columns);
+    public static Problem newInstance(long[] ids) {
+        return new CouplingProblem(ids);
     }
 }
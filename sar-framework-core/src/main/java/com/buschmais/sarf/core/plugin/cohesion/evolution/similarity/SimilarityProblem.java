@@ -9,26 +9,30 @@ import java.util.Collection;
  */
 public class SimilarityProblem extends Problem {
 
-    private SimilarityProblem(int rows, int columns) {
-        super(rows, columns);
+    private SimilarityProblem(long[] ids) {
+        super(ids);
     }
 
     @Override
     public double computeCouplingTo(long from, Collection<Long> to) {
-        return to.stream().mapToDouble(id -> this.relations.get(from, id) + this.relations.get(id, from)).sum();
+        double coupling = 0;
+        for (long id : to) {
+            coupling += getCoupling(from, id) + getCoupling(id, from);
+        }
+        return coupling;
     }
 
     @Override
     public double computeCohesionInComponent(Collection<Long> ids) {
-        return ids.stream().mapToDouble(id -> computeCouplingTo(id, ids)).sum();
+        return sumCouplings(ids, ids);
     }
 
     @Override
     public double computeCouplingBetweenComponents(Collection<Long> ids1, Collection<Long> ids2) {
-        return ids1.stream().mapToDouble(id -> computeCouplingTo(id, ids2)).sum();
+        return sumCouplings(ids1, ids2);
     }
 
-    public static Problem newInstance(int rows, int columns) {
-        return new SimilarityProblem(rows, columns);
+    public static Problem newInstance(long[] ids) {
+        return new SimilarityProblem(ids);
     }
 }
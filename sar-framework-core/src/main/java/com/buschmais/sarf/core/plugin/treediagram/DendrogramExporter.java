@@ -1,16 +1,15 @@
 package com.buschmais.sarf.core.plugin.treediagram;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
-import com.buschmais.jqassistant.plugin.java.api.model.TypeDescriptor;
 import com.buschmais.sarf.core.framework.metamodel.ComponentDescriptor;
+import com.buschmais.sarf.core.plugin.api.ComponentHierarchy;
 import com.buschmais.sarf.core.plugin.api.DiagramExporter;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.buschmais.xo.api.XOManager;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Lazy;
@@ -20,61 +19,47 @@ import org.springframework.stereotype.Service;
  * Exports component data for visualizing it with a dendrogram.
  * A dendrogram is a type of diagram which operates on a tree-like structure.
  * The exporter fuels two visualizations: an interactive, collapsible tree and a radial tree.
+ * Each element of the tree is written as object with a label and its children.
  */
 @Service
 @Lazy
 @RequiredArgsConstructor
 public class DendrogramExporter implements DiagramExporter {
 
+    private final XOManager xoManager;
+
     private final ObjectMapper objectMapper;
 
     @Override
-    public String export(Set<ComponentDescriptor> components) {
-        List<DendrogramElement> data =
-            components.stream().map(this::formatComponentDescriptor).collect(Collectors.toList());
-
-        try {
-            if (data.size() == 1) {
-                return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(data.get(0));
+    public void export(Set<ComponentDescriptor> components, OutputStream out) throws IOException {
+        List<ComponentHierarchy.Element> roots = ComponentHierarchy.of(components, this.xoManager).getRoots();
+        try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .useDefaultPrettyPrinter()) {
+            if (roots.size() == 1) {
+                writeElement(roots.get(0), generator);
             } else {
-                DendrogramElement rootComponent = new DendrogramElement();
-                rootComponent.label = "root";
-                rootComponent.children.addAll(data);
-                return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(rootComponent);
+                generator.writeStartObject();
+                generator.writeStringField("label", "root");
+                generator.writeArrayFieldStart("children");
+                for (ComponentHierarchy.Element root : roots) {
+                    writeElement(root, generator);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
             }
-        } catch (JsonProcessingException e) {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            e.printStackTrace(pw);
-            return sw.toString();
         }
     }
 
-    private DendrogramElement formatComponentDescriptor(ComponentDescriptor componentDescriptor) {
-        DendrogramElement element = new DendrogramElement();
-        element.label = componentDescriptor.getName();
-
-        if (componentDescriptor.getContainedComponents().size() > 0
-            || componentDescriptor.getContainedTypes().size() > 0) {
-            Set<Object> contained = new HashSet<>();
-            contained.addAll(componentDescriptor.getContainedTypes());
-            contained.addAll(componentDescriptor.getContainedComponents());
-            element.children.addAll(contained.stream().map(t -> {
-                if (t instanceof TypeDescriptor) {
-                    return formatTypeDescriptor((TypeDescriptor) t);
-                } else {
-                    return formatComponentDescriptor((ComponentDescriptor) t);
-                }
-            }).collect(Collectors.toList()));
+    private void writeElement(ComponentHierarchy.Element element, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("label", element.getName());
+        generator.writeArrayFieldStart("children");
+        for (ComponentHierarchy.Element child : element.getChildren()) {
+            writeElement(child, generator);
         }
-
-        return element;
-    }
-
-    private DendrogramElement formatTypeDescriptor(TypeDescriptor typeDescriptor) {
-        DendrogramElement element = new DendrogramElement();
-        element.label = typeDescriptor.getName();
-        return element;
+        generator.writeEndArray();
+        generator.writeEndObject();
     }
 
 }
@@ -0,0 +1,299 @@
+package com.buschmais.sarf.core.util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * The undirected coupling between types or components held in memory for computing their similarity. The couplings of
+ * both directions of a pair are summed up, the neighbours of a type are stored in compressed sparse rows. Types are
+ * addressed by a dense index which follows the order of their ids.
+ *
+ * @author Stephan Pirnbaum
+ */
+public final class CouplingGraph {
+
+    private final long[] ids;
+
+    private final int[] offsets;
+
+    private final int[] neighbours;
+
+    private final double[] couplings;
+
+    /**
+     * The sum of the couplings of each type to all of its neighbours.
+     */
+    private final double[] strengths;
+
+    private final ThreadLocal<Row> rows;
+
+    /**
+     * Creates the graph from the directed couplings.
+     *
+     * @param directed The couplings from the source to the target type.
+     */
+    public CouplingGraph(LongPairDoubleMap directed) {
+        long[] endpoints = new long[directed.size() * 2];
+        int[] position = {0};
+        directed.forEach((source, target, coupling) -> {
+            endpoints[position[0]++] = source;
+            endpoints[position[0]++] = target;
+        });
+        Arrays.sort(endpoints);
+        this.ids = Arrays.stream(endpoints).distinct().toArray();
+        LongPairDoubleMap undirected = new LongPairDoubleMap(directed.size() * 2);
+        directed.forEach((source, target, coupling) -> {
+            int s = Arrays.binarySearch(this.ids, source);
+            int t = Arrays.binarySearch(this.ids, target);
+            undirected.add(s, t, coupling);
+            if (s != t) {
+                undirected.add(t, s, coupling);
+            }
+        });
+        this.offsets = new int[this.ids.length + 1];
+        undirected.forEach((source, target, coupling) -> this.offsets[(int) source + 1]++);
+        for (int i = 0; i < this.ids.length; i++) {
+            this.offsets[i + 1] += this.offsets[i];
+        }
+        int[] next = Arrays.copyOf(this.offsets, this.ids.length);
+        this.neighbours = new int[undirected.size()];
+        this.couplings = new double[undirected.size()];
+        this.strengths = new double[this.ids.length];
+        undirected.forEach((source, target, coupling) -> {
+            int slot = next[(int) source]++;
+            this.neighbours[slot] = (int) target;
+            this.couplings[slot] = coupling;
+            this.strengths[(int) source] += coupling;
+        });
+        this.rows = ThreadLocal.withInitial(() -> new Row(this.ids.length));
+    }
+
+    /**
+     * Computes the similarity of all pairs of types sharing at least one neighbour in parallel. The similarity is the
+     * coupling of both types to their shared neighbours divided by the coupling of both types to all neighbours except
+     * each other. Each pair is passed to the consumer once, with the source having the greater id. As in
+     * {@link com.buschmais.sarf.core.framework.repository.TypeRepository#computeTypeSimilarity()}, a type coupled to
+     * itself is its own neighbour and therefore a shared neighbour of each type it is coupled to.
+     *
+     * Pairs below the minimum similarity are dropped. If the number of neighbours is limited, a pair is only kept if
+     * it is among the most similar pairs of at least one of its types, so the number of pairs grows linearly with the
+     * number of types. Ties are resolved in favour of the smaller id.
+     *
+     * @param neighbours The number of most similar neighbours to keep per type, 0 to keep all.
+     * @param minSimilarity The minimum similarity of a pair to be kept.
+     * @param consumer The consumer of the similarities, called from the calling thread only.
+     */
+    public void computeSimilarities(int neighbours, double minSimilarity, LongPairDoubleMap.PairConsumer consumer) {
+        LongPairDoubleMap[] similarities = IntStream.range(0, this.ids.length).parallel()
+            .mapToObj(type -> computeSimilarities(type, other -> other < type, minSimilarity))
+            .toArray(LongPairDoubleMap[]::new);
+        if (neighbours > 0) {
+            MostSimilar[] mostSimilar = new MostSimilar[this.ids.length];
+            for (int type = 0; type < this.ids.length; type++) {
+                mostSimilar[type] = new MostSimilar(neighbours);
+            }
+            for (LongPairDoubleMap row : similarities) {
+                row.forEach((type, other, similarity) -> {
+                    mostSimilar[(int) type].offer((int) other, similarity);
+                    mostSimilar[(int) other].offer((int) type, similarity);
+                });
+            }
+            for (LongPairDoubleMap row : similarities) {
+                row.forEach((type, other, similarity) -> {
+                    if (mostSimilar[(int) type].contains((int) other) || mostSimilar[(int) other].contains((int) type)) {
+                        consumer.accept(this.ids[(int) type], this.ids[(int) other], similarity);
+                    }
+                });
+            }
+        } else {
+            for (LongPairDoubleMap row : similarities) {
+                row.forEach((type, other, similarity) -> consumer.accept(this.ids[(int) type], this.ids[(int) other], similarity));
+            }
+        }
+    }
+
+    /**
+     * Computes the similarity of each of the given types to the other accepted types sharing at least one neighbour,
+     * e.g. to compute the similarities of a few types on a large graph. The similarity is computed as by
+     * {@link CouplingGraph#computeSimilarities(int, double, LongPairDoubleMap.PairConsumer)}, the consumer is called
+     * with the given type as source, so a pair of two given types which are both accepted is passed twice.
+     *
+     * @param types The ids of the types, types without couplings are skipped.
+     * @param others Whether the similarity to the type with the given id shall be computed.
+     * @param consumer The consumer of the similarities, called from the calling thread only.
+     */
+    public void computeSimilarities(long[] types, LongPredicate others, LongPairDoubleMap.PairConsumer consumer) {
+        LongPairDoubleMap[] similarities = Arrays.stream(types).parallel()
+            .mapToInt(type -> Arrays.binarySearch(this.ids, type))
+            .filter(type -> type >= 0)
+            .mapToObj(type -> computeSimilarities(type, other -> other != type && others.test(this.ids[other]), 0))
+            .toArray(LongPairDoubleMap[]::new);
+        for (LongPairDoubleMap row : similarities) {
+            row.forEach((type, other, similarity) -> consumer.accept(this.ids[(int) type], this.ids[(int) other], similarity));
+        }
+    }
+
+    /**
+     * @return The similarities of the type to all accepted types, keyed by dense indices.
+     */
+    private LongPairDoubleMap computeSimilarities(int type, IntPredicate others, double minSimilarity) {
+        Row row = this.rows.get();
+        row.clear();
+        for (int i = this.offsets[type]; i < this.offsets[type + 1]; i++) {
+            row.setDirect(this.neighbours[i], this.couplings[i]);
+        }
+        for (int i = this.offsets[type]; i < this.offsets[type + 1]; i++) {
+            int shared = this.neighbours[i];
+            for (int j = this.offsets[shared]; j < this.offsets[shared + 1]; j++) {
+                int other = this.neighbours[j];
+                if (others.test(other)) {
+                    row.addIntersection(other, this.couplings[i] + this.couplings[j]);
+                }
+            }
+        }
+        LongPairDoubleMap similarities = new LongPairDoubleMap(row.size);
+        for (int i = 0; i < row.size; i++) {
+            int other = row.touched[i];
+            double union = this.strengths[type] + this.strengths[other] - 2 * row.getDirect(other);
+            // types coupled to each other only have no similarity
+            if (union != 0 && row.intersections[other] / union >= minSimilarity) {
+                similarities.put(type, other, row.intersections[other] / union);
+            }
+        }
+        return similarities;
+    }
+
+    /**
+     * The most similar neighbours of a type, kept in a heap with the least similar neighbour at its root.
+     */
+    private static final class MostSimilar {
+
+        private final int[] others;
+
+        private final double[] similarities;
+
+        private int size = 0;
+
+        private MostSimilar(int capacity) {
+            this.others = new int[capacity];
+            this.similarities = new double[capacity];
+        }
+
+        private void offer(int other, double similarity) {
+            if (this.size < this.others.length) {
+                this.others[this.size] = other;
+                this.similarities[this.size] = similarity;
+                siftUp(this.size++);
+            } else if (isLess(this.similarities[0], this.others[0], similarity, other)) {
+                this.others[0] = other;
+                this.similarities[0] = similarity;
+                siftDown(0);
+            }
+        }
+
+        private boolean contains(int other) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.others[i] == other) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (!isLess(this.similarities[position], this.others[position], this.similarities[parent], this.others[parent])) {
+                    return;
+                }
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (2 * position + 1 < this.size) {
+                int child = 2 * position + 1;
+                if (child + 1 < this.size && isLess(this.similarities[child + 1], this.others[child + 1], this.similarities[child], this.others[child])) {
+                    child++;
+                }
+                if (!isLess(this.similarities[child], this.others[child], this.similarities[position], this.others[position])) {
+                    return;
+                }
+                swap(position, child);
+                position = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int other = this.others[i];
+            double similarity = this.similarities[i];
+            this.others[i] = this.others[j];
+            this.similarities[i] = this.similarities[j];
+            this.others[j] = other;
+            this.similarities[j] = similarity;
+        }
+
+        /**
+         * @return Whether the first neighbour is less similar than the second one, of equally similar neighbours the
+         * one with the greater id is the lesser one.
+         */
+        private static boolean isLess(double similarity1, int other1, double similarity2, int other2) {
+            return similarity1 < similarity2 || (similarity1 == similarity2 && other1 > other2);
+        }
+    }
+
+    /**
+     * The per-thread state for computing the similarities of one type, reset in constant time by increasing the
+     * generation.
+     */
+    private static final class Row {
+
+        private final double[] intersections;
+
+        private final double[] direct;
+
+        private final int[] intersectionGenerations;
+
+        private final int[] directGenerations;
+
+        private final int[] touched;
+
+        private int size;
+
+        private int generation = 0;
+
+        private Row(int types) {
+            this.intersections = new double[types];
+            this.direct = new double[types];
+            this.intersectionGenerations = new int[types];
+            this.directGenerations = new int[types];
+            this.touched = new int[types];
+        }
+
+        private void clear() {
+            this.generation++;
+            this.size = 0;
+        }
+
+        private void setDirect(int other, double coupling) {
+            this.direct[other] = coupling;
+            this.directGenerations[other] = this.generation;
+        }
+
+        private double getDirect(int other) {
+            return this.directGenerations[other] == this.generation ? this.direct[other] : 0;
+        }
+
+        private void addIntersection(int other, double coupling) {
+            if (this.intersectionGenerations[other] != this.generation) {
+                this.intersectionGenerations[other] = this.generation;
+                this.intersections[other] = 0;
+                this.touched[this.size++] = other;
+            }
+            this.intersections[other] += coupling;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.buschmais.sarf.core.util;
+
+/**
+ * Open addressing hash map from pairs of ids to primitive doubles. Keys and values are stored in parallel arrays, so
+ * accumulating a value neither allocates key objects nor boxes the value. Both ids are stored in full instead of being
+ * packed into a single long, as node ids are not guaranteed to fit into 32 bits. Instances are not thread-safe.
+ *
+ * @author Stephan Pirnbaum
+ */
+public final class LongPairDoubleMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] sources;
+
+    private long[] targets;
+
+    private double[] values;
+
+    private boolean[] used;
+
+    private int size = 0;
+
+    public LongPairDoubleMap() {
+        this(16);
+    }
+
+    public LongPairDoubleMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.sources = new long[capacity];
+        this.targets = new long[capacity];
+        this.values = new double[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    /**
+     * Adds the value to the value of the pair, a missing pair is inserted with the value.
+     *
+     * @param source The first id of the pair.
+     * @param target The second id of the pair.
+     * @param value The value to add.
+     */
+    public void add(long source, long target, double value) {
+        int slot = slot(source, target);
+        if (this.used[slot]) {
+            this.values[slot] += value;
+            return;
+        }
+        insert(slot, source, target, value);
+    }
+
+    /**
+     * Sets the value of the pair, replacing a previous value.
+     *
+     * @param source The first id of the pair.
+     * @param target The second id of the pair.
+     * @param value The new value.
+     */
+    public void put(long source, long target, double value) {
+        int slot = slot(source, target);
+        if (this.used[slot]) {
+            this.values[slot] = value;
+            return;
+        }
+        insert(slot, source, target, value);
+    }
+
+    /**
+     * @param source The first id of the pair.
+     * @param target The second id of the pair.
+     *
+     * @return The value of the pair, 0 if the pair is not contained.
+     */
+    public double get(long source, long target) {
+        int slot = slot(source, target);
+        return this.used[slot] ? this.values[slot] : 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Calls the consumer for each contained pair in no particular order.
+     *
+     * @param consumer The {@link PairConsumer}.
+     */
+    public void forEach(PairConsumer consumer) {
+        for (int i = 0; i < this.used.length; i++) {
+            if (this.used[i]) {
+                consumer.accept(this.sources[i], this.targets[i], this.values[i]);
+            }
+        }
+    }
+
+    private void insert(int slot, long source, long target, double value) {
+        this.used[slot] = true;
+        this.sources[slot] = source;
+        this.targets[slot] = target;
+        this.values[slot] = value;
+        if (++this.size > this.used.length * LOAD_FACTOR) {
+            grow();
+        }
+    }
+
+    private int slot(long source, long target) {
+        int mask = this.used.length - 1;
+        int slot = hash(source, target) & mask;
+        while (this.used[slot] && (this.sources[slot] != source || this.targets[slot] != target)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldSources = this.sources;
+        long[] oldTargets = this.targets;
+        double[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+        this.sources = new long[oldUsed.length << 1];
+        this.targets = new long[oldUsed.length << 1];
+        this.values = new double[oldUsed.length << 1];
+        this.used = new boolean[oldUsed.length << 1];
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldSources[i], oldTargets[i]);
+                this.used[slot] = true;
+                this.sources[slot] = oldSources[i];
+                this.targets[slot] = oldTargets[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long source, long target) {
+        long hash = (source * 0x9E3779B97F4A7C15L) ^ target;
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Consumer of the pairs of a {@link LongPairDoubleMap}.
+     */
+    @FunctionalInterface
+    public interface PairConsumer {
+
+        void accept(long source, long target, double value);
+    }
+}
@@ -0,0 +1,82 @@
+package com.buschmais.sarf.core;
+
+import com.buschmais.xo.neo4j.api.annotation.Cypher;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import java.util.Map;
+
+/**
+ * Rule providing an embedded database in a temporary folder for executing the queries of the repositories, started
+ * before and shut down after each test.
+ *
+ * @author Stephan Pirnbaum
+ */
+public final class EmbeddedDatabase extends ExternalResource {
+
+    private final TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService service;
+
+    @Override
+    protected void before() throws Throwable {
+        this.folder.create();
+        this.service = new GraphDatabaseFactory().newEmbeddedDatabase(this.folder.getRoot());
+    }
+
+    @Override
+    protected void after() {
+        this.service.shutdown();
+        this.folder.delete();
+    }
+
+    /**
+     * @return The {@link GraphDatabaseService} of the running database.
+     */
+    public GraphDatabaseService getService() {
+        return this.service;
+    }
+
+    public Transaction beginTx() {
+        return this.service.beginTx();
+    }
+
+    public Result execute(String query) {
+        return this.service.execute(query);
+    }
+
+    public Result execute(String query, Map<String, Object> parameters) {
+        return this.service.execute(query, parameters);
+    }
+
+    /**
+     * Deletes all nodes and relationships.
+     */
+    public void clear() {
+        try (Transaction tx = this.service.beginTx()) {
+            this.service.execute("MATCH (n) DETACH DELETE n").close();
+            tx.success();
+        }
+    }
+
+    /**
+     * Returns the query of a repository method.
+     *
+     * @param repository The repository.
+     * @param method The name of the method.
+     * @param parameterTypes The parameter types of the method.
+     *
+     * @return The value of the {@link Cypher} annotation of the method.
+     */
+    public static String cypherOf(Class<?> repository, String method, Class<?>... parameterTypes) {
+        try {
+            return repository.getMethod(method, parameterTypes).getAnnotation(Cypher.class).value();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No method " + method + " in " + repository.getName(), e);
+        }
+    }
+}
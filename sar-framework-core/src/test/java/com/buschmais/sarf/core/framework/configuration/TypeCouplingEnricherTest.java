@@ -0,0 +1,211 @@
+package com.buschmais.sarf.core.framework.configuration;
+
+import com.buschmais.sarf.core.EmbeddedDatabase;
+import com.buschmais.sarf.core.framework.repository.MetricRepository;
+import com.buschmais.sarf.core.util.LongPairDoubleMap;
+import com.buschmais.xo.api.Query;
+import com.buschmais.xo.api.ResultIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the couplings extracted by {@link MetricRepository#computeCouplingMetrics()} with those of the separate
+ * metric queries, executed in an embedded database.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class TypeCouplingEnricherTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Rule
+    public final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    public void batchMatchesSeparateQueries() {
+        TypeCouplingEnricher enricher = new TypeCouplingEnricher(null, null, null, metricRepository());
+        for (long seed = 1; seed <= 10; seed++) {
+            this.database.clear();
+            createGraph(new Random(seed));
+            LongPairDoubleMap separate = enricher.computeCouplings(Extraction.SEPARATE);
+            assertTrue(separate.size() > 0);
+            assertCouplings(toMap(separate), toMap(enricher.computeCouplings(Extraction.BATCH)));
+        }
+    }
+
+    /**
+     * Creates random internal and external types with methods, fields and parameters and random relations between
+     * them, including invocations of abstract and static methods, accesses of static fields and relations of a type to
+     * itself.
+     */
+    private void createGraph(Random random) {
+        try (Transaction tx = this.database.beginTx()) {
+            List<Node> types = new ArrayList<>();
+            List<Node> methods = new ArrayList<>();
+            List<Node> fields = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Node type = i < 12 ?
+                    createNode(Label.label("Type"), Label.label("Internal")) :
+                    createNode(Label.label("Type"));
+                types.add(type);
+                for (int m = random.nextInt(5); m > 0; m--) {
+                    Node method = createNode(Label.label("Method"));
+                    setFlag(method, "static", random);
+                    setFlag(method, "abstract", random);
+                    relate(type, "DECLARES", method);
+                    methods.add(method);
+                }
+                for (int f = random.nextInt(4); f > 0; f--) {
+                    Node field = createNode(Label.label("Field"));
+                    setFlag(field, "static", random);
+                    relate(type, "DECLARES", field);
+                    fields.add(field);
+                }
+            }
+            for (Node method : methods) {
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    // several invocations of the same method are counted separately
+                    relate(method, "INVOKES", methods.get(random.nextInt(methods.size())));
+                }
+                if (random.nextBoolean()) {
+                    relate(method, "RETURNS", types.get(random.nextInt(types.size())));
+                }
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    Node parameter = createNode(Label.label("Parameter"));
+                    relate(method, "HAS", parameter);
+                    relate(parameter, "OF_TYPE", types.get(random.nextInt(types.size())));
+                }
+                for (int i = random.nextInt(4); i > 0 && !fields.isEmpty(); i--) {
+                    relate(method, random.nextBoolean() ? "READS" : "WRITES", fields.get(random.nextInt(fields.size())));
+                }
+            }
+            for (Node field : fields) {
+                relate(field, "OF_TYPE", types.get(random.nextInt(types.size())));
+            }
+            for (Node source : types) {
+                for (Node target : types) {
+                    for (String relation : new String[]{"EXTENDS", "IMPLEMENTS", "DEPENDS_ON"}) {
+                        if (random.nextInt(12) == 0) {
+                            relate(source, relation, target);
+                        }
+                    }
+                    if (source != target && random.nextInt(20) == 0) {
+                        relate(source, "DECLARES", target);
+                    }
+                }
+            }
+            tx.success();
+        }
+    }
+
+    private Node createNode(Label... labels) {
+        return this.database.getService().createNode(labels);
+    }
+
+    private static void relate(Node source, String type, Node target) {
+        source.createRelationshipTo(target, RelationshipType.withName(type));
+    }
+
+    /**
+     * Sets the flag to true or false or leaves it unset.
+     */
+    private static void setFlag(Node node, String flag, Random random) {
+        int value = random.nextInt(3);
+        if (value < 2) {
+            node.setProperty(flag, value == 0);
+        }
+    }
+
+    /**
+     * @return A {@link MetricRepository} executing the query of each method in the embedded database.
+     */
+    private MetricRepository metricRepository() {
+        return (MetricRepository) Proxy.newProxyInstance(MetricRepository.class.getClassLoader(), new Class<?>[]{MetricRepository.class},
+            (proxy, method, arguments) -> {
+                List<Map> rows = new ArrayList<>();
+                try (Transaction tx = this.database.beginTx()) {
+                    this.database.execute(EmbeddedDatabase.cypherOf(MetricRepository.class, method.getName()))
+                        .forEachRemaining(row -> rows.add((Map) row.values().iterator().next()));
+                    tx.success();
+                }
+                return new Rows(rows);
+            });
+    }
+
+    private static Map<Long, Map<Long, Double>> toMap(LongPairDoubleMap couplings) {
+        Map<Long, Map<Long, Double>> map = new HashMap<>();
+        couplings.forEach((source, target, coupling) -> map.computeIfAbsent(source, k -> new HashMap<>()).put(target, coupling));
+        return map;
+    }
+
+    private static void assertCouplings(Map<Long, Map<Long, Double>> expected, Map<Long, Map<Long, Double>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((source, targets) -> {
+            assertEquals(targets.keySet(), actual.get(source).keySet());
+            targets.forEach((target, coupling) ->
+                assertEquals(source + " -> " + target, coupling, actual.get(source).get(target), DELTA * Math.max(1, coupling)));
+        });
+    }
+
+    /**
+     * The rows of a query read into memory.
+     */
+    private static final class Rows implements Query.Result<Map> {
+
+        private final List<Map> rows;
+
+        private Rows(List<Map> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Map getSingleResult() {
+            return this.rows.get(0);
+        }
+
+        @Override
+        public boolean hasResult() {
+            return !this.rows.isEmpty();
+        }
+
+        @Override
+        public ResultIterator<Map> iterator() {
+            Iterator<Map> iterator = this.rows.iterator();
+            return new ResultIterator<Map>() {
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Map next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
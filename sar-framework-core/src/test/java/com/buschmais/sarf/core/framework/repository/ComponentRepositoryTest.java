@@ -0,0 +1,87 @@
+package com.buschmais.sarf.core.framework.repository;
+
+import com.buschmais.sarf.core.EmbeddedDatabase;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Executes the queries of the {@link ComponentRepository} in an embedded database.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class ComponentRepositoryTest {
+
+    @Rule
+    public final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    public void createComponentsReturnsEachComponent() {
+        long type1;
+        long type2;
+        try (Transaction tx = this.database.beginTx()) {
+            type1 = this.database.getService().createNode().getId();
+            type2 = this.database.getService().createNode().getId();
+            tx.success();
+        }
+        List<Map<String, Object>> components = Arrays.asList(component(-1), component(-2), component(-3));
+        Map<Long, Long> nodeIds = new HashMap<>();
+        String cypher = EmbeddedDatabase.cypherOf(ComponentRepository.class, "createComponents", List.class);
+        try (Transaction tx = this.database.beginTx()) {
+            this.database.execute(cypher, Collections.singletonMap("components", components)).forEachRemaining(row -> {
+                Map<?, ?> component = (Map<?, ?>) row.values().iterator().next();
+                nodeIds.put((Long) component.get("key"), (Long) component.get("id"));
+            });
+            tx.success();
+        }
+        assertEquals(3, nodeIds.size());
+        List<Map<String, Object>> elements = Arrays.asList(
+            element(nodeIds.get(-1L), type1),
+            element(nodeIds.get(-1L), type2),
+            element(nodeIds.get(-2L), nodeIds.get(-1L)),
+            // an element which does not exist
+            element(nodeIds.get(-2L), Long.MAX_VALUE));
+        cypher = EmbeddedDatabase.cypherOf(ComponentRepository.class, "createContains", List.class);
+        try (Transaction tx = this.database.beginTx()) {
+            assertEquals(3L, this.database.execute(cypher, Collections.singletonMap("elements", elements)).next().values().iterator().next());
+            tx.success();
+        }
+        try (Transaction tx = this.database.beginTx()) {
+            assertEquals(2L, contained(nodeIds.get(-1L)));
+            assertEquals(1L, contained(nodeIds.get(-2L)));
+            assertEquals(0L, contained(nodeIds.get(-3L)));
+            tx.success();
+        }
+    }
+
+    private long contained(long component) {
+        return (long) this.database.execute(
+            "MATCH (c:SARF:Component)-[:CONTAINS]->(e) WHERE ID(c) = {id} RETURN count(e) AS contained",
+            Collections.singletonMap("id", component)).next().get("contained");
+    }
+
+    private static Map<String, Object> element(long component, long element) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("component", component);
+        row.put("element", element);
+        return row;
+    }
+
+    private static Map<String, Object> component(long key) {
+        Map<String, Object> component = new HashMap<>();
+        component.put("key", key);
+        component.put("shape", "Component");
+        component.put("name", "Component" + key);
+        component.put("topWords", new ArrayList<String>());
+        return component;
+    }
+}
@@ -0,0 +1,345 @@
+package com.buschmais.sarf.core.plugin.cohesion;
+
+import com.buschmais.sarf.core.EmbeddedDatabase;
+import com.buschmais.sarf.core.framework.repository.ComponentRepository;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.Problem;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.similarity.SimilarityProblem;
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the contraction of a {@link HierarchyLevel}, both against hand-computed values and against the Cypher queries
+ * which computed the couplings and similarities of the next level before. Except for
+ * {@link ComponentRepository#computeCouplingBetweenComponents(long[])}, these queries are no longer part of the
+ * repositories.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class HierarchyLevelTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final String COUPLING_BETWEEN_COMPONENTS_AND_TYPES = "MATCH" +
+            "  (c:Component:SARF)-[:CONTAINS]->(e)-[coup:COUPLES]->(t:Type:Internal) " +
+            "WHERE" +
+            "  ID(c) IN {ids} AND ID(t) IN {ids} " +
+            "WITH" +
+            "  c, sum(coup.coupling) AS coupling, t " +
+            "MATCH" +
+            "  (c)-[cont:CONTAINS]->(e) " +
+            "WITH" +
+            "  c, coupling, count(e) AS max, t " +
+            "MERGE " +
+            "  (c)-[:COUPLES{coupling:(coupling / max)}]->(t)";
+
+    private static final String COUPLING_BETWEEN_TYPES_AND_COMPONENTS = "MATCH" +
+            "  (c:Component:SARF)-[:CONTAINS]->(e)<-[coup:COUPLES]-(t:Type:Internal) " +
+            "WHERE" +
+            "  ID(c) IN {ids} AND ID(t) IN {ids} " +
+            "WITH" +
+            "  c, sum(coup.coupling) AS coupling, t " +
+            "MATCH" +
+            "  (c)-[cont:CONTAINS]->(e) " +
+            "WITH" +
+            "  c, coupling, count(e) AS max, t " +
+            "MERGE " +
+            "  (c)<-[:COUPLES{coupling:(coupling / max)}]-(t)";
+
+    private static final String SIMILARITY_BETWEEN_COMPONENTS = "MATCH\n" +
+            "  (c1:Component:SARF)-[:COUPLES]-(c)-[:COUPLES]-(c2:Component:SARF)\n" +
+            "WHERE \n" +
+            "  ID(c1) IN {ids} AND ID(c2) IN {ids} AND ID(c1) > ID(c2)\n" +
+            "WITH\n" +
+            "  DISTINCT c1, c2, c\n" +
+            "MATCH\n" +
+            "  (c1)-[coup:COUPLES]-(c)\n" +
+            "WITH\n" +
+            "  c1, c2, c, SUM(coup.coupling) AS c1Coup\n" +
+            "MATCH\n" +
+            "  (c2)-[coup:COUPLES]-(c)\n" +
+            "WITH \n" +
+            "  c1, c2, c1Coup, SUM(coup.coupling) AS c2Coup\n" +
+            "WITH\n" +
+            "  c1, c2, SUM(c1Coup) + SUM(c2Coup) AS intersection\n" +
+            "OPTIONAL MATCH\n" +
+            "  (c1)-[coup:COUPLES]-(c)\n" +
+            "WHERE \n" +
+            "  c <> c2\n" +
+            "WITH \n" +
+            "  c1, c2, intersection, sum(coup.coupling) AS c1Coup\n" +
+            "OPTIONAL MATCH\n" +
+            "  (c2)-[coup:COUPLES]-(c)\n" +
+            "WHERE\n" +
+            "  c <> c1\n" +
+            "WITH \n" +
+            "  c1, c2, c1Coup, sum(coup.coupling) AS c2Coup, intersection\n" +
+            "MERGE\n" +
+            "  (c1)-[:IS_SIMILAR_TO{similarity:(intersection / (c1Coup + c2Coup))}]-(c2)";
+
+    private static final String SIMILARITY_BETWEEN_COMPONENTS_AND_TYPES = "MATCH\n" +
+            "  (c:Component:SARF)-[:COUPLES]-(e)-[:COUPLES]-(t:Type:Internal)\n" +
+            "WHERE \n" +
+            "  ID(c) IN {ids} AND ID(t) IN {ids}\n" +
+            "WITH\n" +
+            "  DISTINCT c, e, t\n" +
+            "MATCH\n" +
+            "  (c)-[coup:COUPLES]-(e)\n" +
+            "WITH\n" +
+            "  c, e, t, SUM(coup.coupling) AS cCoup\n" +
+            "MATCH\n" +
+            "  (t)-[coup:COUPLES]-(e)\n" +
+            "WITH \n" +
+            "  c, t, cCoup, SUM(coup.coupling) AS tCoup\n" +
+            "WITH\n" +
+            "  c, t, SUM(cCoup) + SUM(tCoup) AS intersection\n" +
+            "OPTIONAL MATCH\n" +
+            "  (c)-[coup:COUPLES]-(e)\n" +
+            "WHERE \n" +
+            "  e <> t\n" +
+            "WITH \n" +
+            "  c, t, intersection, sum(coup.coupling) AS cCoup\n" +
+            "OPTIONAL MATCH\n" +
+            "  (t)-[coup:COUPLES]-(e)\n" +
+            "WHERE\n" +
+            "  c <> e\n" +
+            "WITH \n" +
+            "  c, t, cCoup, sum(coup.coupling) AS tCoup, intersection\n" +
+            "MERGE\n" +
+            "  (c)-[:IS_SIMILAR_TO{similarity:(intersection / (cCoup + tCoup))}]-(t)";
+
+    @Rule
+    public final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    public void contractNormalizesCouplings() {
+        Problem couplings = CouplingProblem.newInstance(new long[]{1, 2, 3, 4, 5, 6});
+        // inside of component -1
+        couplings.addRelation(1, 2, 1);
+        couplings.addRelation(2, 2, 4);
+        // inside of component -2
+        couplings.addRelation(5, 6, 1);
+        couplings.addRelation(6, 6, 1);
+        // between component -1 and type 4
+        couplings.addRelation(1, 4, 2);
+        couplings.addRelation(2, 4, 1);
+        couplings.addRelation(4, 3, 3);
+        // between type 4 and component -2
+        couplings.addRelation(4, 5, 2);
+        // between the components
+        couplings.addRelation(3, 5, 1.5);
+        couplings.addRelation(5, 1, 0.5);
+        // the self-coupling of a type is kept on the next level
+        couplings.addRelation(4, 4, 0.5);
+        Map<Long, Set<Long>> groups = new HashMap<>();
+        groups.put(-1L, Sets.newHashSet(1L, 2L, 3L));
+        groups.put(-2L, Sets.newHashSet(5L, 6L));
+        groups.put(4L, Sets.newHashSet(4L));
+
+        Map<Long, Map<Long, Double>> expected = new HashMap<>();
+        // relative to the size of the component if one group is a single element
+        put(expected, -1, 4, (2 + 1) / 3d);
+        put(expected, 4, -1, 3 / 3d);
+        put(expected, 4, -2, 2 / 2d);
+        // relative to the number of pairs of elements of both components
+        put(expected, -1, -2, 1.5 / 10);
+        put(expected, -2, -1, 0.5 / 10);
+        put(expected, 4, 4, 0.5);
+        assertValues(expected, couplings(new HierarchyLevel(couplings, null).contract(groups)));
+    }
+
+    @Test
+    public void contractKeepsSimilarityBetweenTypes() {
+        long[] ids = {1, 2, 3, 4};
+        Problem couplings = CouplingProblem.newInstance(ids);
+        couplings.addRelation(1, 2, 1);
+        couplings.addRelation(2, 3, 1);
+        couplings.addRelation(3, 4, 1);
+        Problem similarities = SimilarityProblem.newInstance(ids);
+        similarities.addRelation(4, 3, 0.3);
+        similarities.addRelation(2, 1, 0.9);
+        similarities.addRelation(3, 2, 0.7);
+        Map<Long, Set<Long>> groups = new HashMap<>();
+        groups.put(-1L, Sets.newHashSet(1L, 2L));
+        groups.put(3L, Sets.newHashSet(3L));
+        groups.put(4L, Sets.newHashSet(4L));
+        Map<Long, Map<Long, Double>> next = similarities(new HierarchyLevel(couplings, similarities).contract(groups));
+        // the similarity of types is not recomputed from the contracted couplings
+        assertEquals(0.3, next.get(4L).get(3L), DELTA);
+        // the similarity of contained types is dropped, the component is similar to 4 via their shared neighbour 3
+        assertNull(next.get(3L));
+        assertEquals((1 / 2d + 1) / (1 / 2d + 1), next.get(4L).get(-1L), DELTA);
+    }
+
+    /**
+     * The couplings and similarities of the next level match those of the former Cypher queries.
+     */
+    @Test
+    public void randomLevelsMatchFormerQueries() {
+        for (long seed = 1; seed <= 3; seed++) {
+            Random random = new Random(seed);
+            this.database.clear();
+            int size = 60;
+            long[] types = new long[size];
+            // the node id of each component by its temporary id
+            Map<Long, Long> components = new HashMap<>();
+            Map<Long, Set<Long>> groups = new HashMap<>();
+            try (Transaction tx = this.database.beginTx()) {
+                Node[] nodes = new Node[size];
+                for (int i = 0; i < size; i++) {
+                    nodes[i] = this.database.getService().createNode(Label.label("Type"), Label.label("Internal"));
+                    types[i] = nodes[i].getId();
+                }
+                for (int i = 0; i < size; i++) {
+                    for (int j = 0; j < size; j++) {
+                        // including self-loops
+                        if (random.nextDouble() < 0.05) {
+                            nodes[i].createRelationshipTo(nodes[j], RelationshipType.withName("COUPLES"))
+                                .setProperty("coupling", random.nextDouble());
+                        }
+                        if (i > j && random.nextDouble() < 0.05) {
+                            nodes[i].createRelationshipTo(nodes[j], RelationshipType.withName("IS_SIMILAR_TO"))
+                                .setProperty("similarity", random.nextDouble());
+                        }
+                    }
+                }
+                List<Long> order = new ArrayList<>();
+                for (long type : types) {
+                    order.add(type);
+                }
+                Collections.shuffle(order, random);
+                long next = -1;
+                for (int position = 0; position < size; ) {
+                    Set<Long> members = new HashSet<>(order.subList(position, Math.min(size, position + 1 + random.nextInt(5))));
+                    position += members.size();
+                    if (members.size() == 1) {
+                        groups.put(members.iterator().next(), members);
+                    } else {
+                        Node component = this.database.getService().createNode(Label.label("Component"), Label.label("SARF"));
+                        for (long member : members) {
+                            component.createRelationshipTo(this.database.getService().getNodeById(member), RelationshipType.withName("CONTAINS"));
+                        }
+                        components.put(next, component.getId());
+                        groups.put(next--, members);
+                    }
+                }
+                tx.success();
+            }
+            Problem couplings = CouplingProblem.newInstance(types);
+            Problem similarities = SimilarityProblem.newInstance(types);
+            load(types, "COUPLES", "coupling", couplings);
+            load(types, "IS_SIMILAR_TO", "similarity", similarities);
+            HierarchyLevel level = new HierarchyLevel(couplings, similarities).contract(groups);
+
+            long[] ids = groups.keySet().stream().mapToLong(id -> components.getOrDefault(id, id)).sorted().toArray();
+            Map<String, Object> parameters = Collections.singletonMap("ids", ids);
+            try (Transaction tx = this.database.beginTx()) {
+                this.database.execute(EmbeddedDatabase.cypherOf(ComponentRepository.class, "computeCouplingBetweenComponents", long[].class), parameters).close();
+                this.database.execute(COUPLING_BETWEEN_COMPONENTS_AND_TYPES, parameters).close();
+                this.database.execute(COUPLING_BETWEEN_TYPES_AND_COMPONENTS, parameters).close();
+                tx.success();
+            }
+            assertValues(read(ids, "COUPLES", "coupling", false), relabel(couplings(level), components, false));
+            try (Transaction tx = this.database.beginTx()) {
+                this.database.execute(SIMILARITY_BETWEEN_COMPONENTS, parameters).close();
+                this.database.execute(SIMILARITY_BETWEEN_COMPONENTS_AND_TYPES, parameters).close();
+                tx.success();
+            }
+            assertValues(read(ids, "IS_SIMILAR_TO", "similarity", true), relabel(similarities(level), components, true));
+        }
+    }
+
+    private void load(long[] ids, String type, String property, Problem problem) {
+        read(ids, type, property, false).forEach((source, targets) ->
+            targets.forEach((target, value) -> problem.addRelation(source, target, value)));
+    }
+
+    /**
+     * Reads the relationships between the given nodes, undirected relationships are keyed by the greater id.
+     */
+    private Map<Long, Map<Long, Double>> read(long[] ids, String type, String property, boolean undirected) {
+        Map<Long, Map<Long, Double>> values = new HashMap<>();
+        try (Transaction tx = this.database.beginTx()) {
+            this.database.execute("MATCH (s)-[r:" + type + "]->(t) WHERE ID(s) IN {ids} AND ID(t) IN {ids} " +
+                "RETURN ID(s) AS s, ID(t) AS t, toFloat(r." + property + ") AS value", Collections.singletonMap("ids", ids))
+                .forEachRemaining(row -> {
+                    long source = (Long) row.get("s");
+                    long target = (Long) row.get("t");
+                    if (undirected && source < target) {
+                        put(values, target, source, (Double) row.get("value"));
+                    } else {
+                        put(values, source, target, (Double) row.get("value"));
+                    }
+                });
+            tx.success();
+        }
+        return values;
+    }
+
+    private static Map<Long, Map<Long, Double>> couplings(HierarchyLevel level) {
+        Map<Long, Map<Long, Double>> couplings = new HashMap<>();
+        level.forEachCoupling((source, target, coupling) -> put(couplings, source, target, coupling));
+        return couplings;
+    }
+
+    /**
+     * @return The similarities of the level, keyed by the greater id.
+     */
+    private static Map<Long, Map<Long, Double>> similarities(HierarchyLevel level) {
+        Map<Long, Map<Long, Double>> similarities = new HashMap<>();
+        Problem problem = level.getProblem();
+        long[] ids = problem.getIds();
+        for (int element = 0; element < ids.length; element++) {
+            long source = ids[element];
+            problem.forEachOutgoing(element, (neighbour, similarity) ->
+                put(similarities, Math.max(source, ids[neighbour]), Math.min(source, ids[neighbour]), similarity));
+        }
+        return similarities;
+    }
+
+    /**
+     * Replaces the temporary ids of the components by their node ids, undirected values are keyed by the greater id.
+     */
+    private static Map<Long, Map<Long, Double>> relabel(Map<Long, Map<Long, Double>> values, Map<Long, Long> components, boolean undirected) {
+        Map<Long, Map<Long, Double>> relabeled = new HashMap<>();
+        values.forEach((source, targets) -> targets.forEach((target, value) -> {
+            long relabeledSource = components.getOrDefault(source, source);
+            long relabeledTarget = components.getOrDefault(target, target);
+            if (undirected && relabeledSource < relabeledTarget) {
+                put(relabeled, relabeledTarget, relabeledSource, value);
+            } else {
+                put(relabeled, relabeledSource, relabeledTarget, value);
+            }
+        }));
+        return relabeled;
+    }
+
+    private static void put(Map<Long, Map<Long, Double>> values, long source, long target, double value) {
+        values.computeIfAbsent(source, s -> new HashMap<>()).put(target, value);
+    }
+
+    private static void assertValues(Map<Long, Map<Long, Double>> expected, Map<Long, Map<Long, Double>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((source, targets) -> {
+            assertEquals(targets.keySet(), actual.get(source).keySet());
+            targets.forEach((target, value) -> assertEquals(value, actual.get(source).get(target), DELTA));
+        });
+    }
+}
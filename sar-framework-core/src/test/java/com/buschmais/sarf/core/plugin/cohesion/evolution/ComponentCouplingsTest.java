@@ -0,0 +1,158 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Stephan Pirnbaum
+ */
+public class ComponentCouplingsTest {
+
+    /**
+     * The mask of a {@link ComponentCouplings} created for up to four pairs.
+     */
+    private static final int MASK = 7;
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void removeDropsPairOnlyAfterAllContributionsAreRemoved() {
+        ComponentCouplings couplings = new ComponentCouplings(0);
+        couplings.add(0, 1, 1);
+        couplings.add(0, 1, 2);
+        couplings.remove(0, 1, 1);
+        assertEquals(1, couplings.size());
+        assertEquals(2, couplings.get(0, 1), DELTA);
+        couplings.remove(0, 1, 2);
+        assertEquals(0, couplings.size());
+        assertEquals(0, couplings.get(0, 1), DELTA);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removeOfUnknownPairFails() {
+        ComponentCouplings couplings = new ComponentCouplings(0);
+        couplings.add(0, 1, 1);
+        couplings.remove(1, 0, 1);
+    }
+
+    @Test
+    public void removeKeepsCollidingPairsReachable() {
+        // three pairs probing from the last slot wrap around to the start of the table, where a fourth pair has its
+        // home slot
+        List<int[]> pairs = collidingPairs(MASK, 3);
+        pairs.add(collidingPairs(0, 1).get(0));
+        for (int first = 0; first < pairs.size(); first++) {
+            ComponentCouplings couplings = new ComponentCouplings(0);
+            Map<Long, Double> expected = new HashMap<>();
+            for (int i = 0; i < pairs.size(); i++) {
+                couplings.add(pairs.get(i)[0], pairs.get(i)[1], i + 1);
+                expected.put(ComponentCouplings.pack(pairs.get(i)[0], pairs.get(i)[1]), (double) i + 1);
+            }
+            // remove the pairs in rotated order, so that each pair is removed first once
+            for (int i = 0; i < pairs.size(); i++) {
+                int[] pair = pairs.get((first + i) % pairs.size());
+                couplings.remove(pair[0], pair[1], expected.remove(ComponentCouplings.pack(pair[0], pair[1])));
+                assertContent(expected, couplings);
+            }
+        }
+    }
+
+    @Test
+    public void relabelKeepsCollidingPairs() {
+        List<int[]> pairs = collidingPairs(MASK, 4);
+        ComponentCouplings couplings = new ComponentCouplings(0);
+        for (int i = 0; i < pairs.size(); i++) {
+            couplings.add(pairs.get(i)[0], pairs.get(i)[1], i + 1);
+        }
+        // shift the remaining pairs back before relabeling
+        couplings.remove(pairs.get(0)[0], pairs.get(0)[1], 1);
+        int[] mapping = new int[64];
+        for (int component = 0; component < mapping.length; component++) {
+            mapping[component] = mapping.length - 1 - component;
+        }
+        ComponentCouplings relabeled = couplings.relabel(mapping);
+        Map<Long, Double> expected = new HashMap<>();
+        for (int i = 1; i < pairs.size(); i++) {
+            expected.put(ComponentCouplings.pack(mapping[pairs.get(i)[0]], mapping[pairs.get(i)[1]]), (double) i + 1);
+        }
+        assertContent(expected, relabeled);
+        // the relabeled instance must still support removing pairs
+        relabeled.remove(mapping[pairs.get(2)[0]], mapping[pairs.get(2)[1]], 3);
+        expected.remove(ComponentCouplings.pack(mapping[pairs.get(2)[0]], mapping[pairs.get(2)[1]]));
+        assertContent(expected, relabeled);
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        ComponentCouplings couplings = new ComponentCouplings(0);
+        Map<Long, Double> expected = new HashMap<>();
+        Map<Long, Integer> counts = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        for (int operation = 0; operation < 20000; operation++) {
+            if (keys.isEmpty() || random.nextInt(3) > 0) {
+                int source = random.nextInt(32);
+                int target = random.nextInt(32);
+                long key = ComponentCouplings.pack(source, target);
+                couplings.add(source, target, 1);
+                expected.merge(key, 1d, Double::sum);
+                if (counts.merge(key, 1, Integer::sum) == 1) {
+                    keys.add(key);
+                }
+            } else {
+                int index = random.nextInt(keys.size());
+                long key = keys.get(index);
+                couplings.remove((int) (key >>> 32), (int) key, 1);
+                if (counts.merge(key, -1, Integer::sum) == 0) {
+                    counts.remove(key);
+                    expected.remove(key);
+                    keys.set(index, keys.get(keys.size() - 1));
+                    keys.remove(keys.size() - 1);
+                } else {
+                    expected.merge(key, -1d, Double::sum);
+                }
+            }
+            if (operation % 100 == 0) {
+                assertContent(expected, couplings);
+            }
+        }
+        assertContent(expected, couplings);
+        int[] mapping = new int[32];
+        for (int component = 0; component < mapping.length; component++) {
+            mapping[component] = (component * 7) % mapping.length;
+        }
+        Map<Long, Double> relabeled = new HashMap<>();
+        expected.forEach((key, value) -> relabeled.put(
+            ComponentCouplings.pack(mapping[(int) (key >>> 32)], mapping[(int) (long) key]), value));
+        assertContent(relabeled, couplings.relabel(mapping));
+    }
+
+    /**
+     * Finds pairs of components whose key has the given home slot in a table of eight slots.
+     */
+    private static List<int[]> collidingPairs(int home, int count) {
+        List<int[]> pairs = new ArrayList<>();
+        for (int source = 0; source < 64 && pairs.size() < count; source++) {
+            for (int target = 0; target < 64 && pairs.size() < count; target++) {
+                if (ComponentCouplings.slot(ComponentCouplings.pack(source, target), MASK) == home) {
+                    pairs.add(new int[]{source, target});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static void assertContent(Map<Long, Double> expected, ComponentCouplings couplings) {
+        assertEquals(expected.size(), couplings.size());
+        expected.forEach((key, value) -> assertEquals(value, couplings.get((int) (key >>> 32), (int) (long) key), DELTA));
+        couplings.forEach((source, target, coupling) ->
+            assertEquals(expected.get(ComponentCouplings.pack(source, target)), coupling, DELTA));
+    }
+}
@@ -0,0 +1,41 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingBasedFitnessFunction;
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
+import io.jenetics.Genotype;
+import io.jenetics.LongGene;
+import io.jenetics.ext.moea.Vec;
+import io.jenetics.util.MSeq;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Stephan Pirnbaum
+ */
+public class FitnessFunctionTest {
+
+    @Test
+    public void relabeledPartitioningIsServedFromCache() {
+        Problem problem = CouplingProblem.newInstance(new long[]{10, 11, 12, 13});
+        problem.addRelation(10, 11, 1);
+        problem.addRelation(11, 12, 2);
+        problem.addRelation(12, 13, 3);
+        PartitioningContext context = new PartitioningContext(problem);
+        FitnessFunction fitnessFunction = new CouplingBasedFitnessFunction(context, 10);
+        Vec<double[]> normalized = fitnessFunction.evaluate(genotype(context, 0, 0, 1, 1));
+        Vec<double[]> relabeled = fitnessFunction.evaluate(genotype(context, 3, 3, 2, 2));
+        assertArrayEquals(normalized.data(), relabeled.data(), 0);
+        assertEquals(1, fitnessFunction.getCacheStats().hitCount());
+        assertEquals(1, fitnessFunction.getCacheStats().missCount());
+    }
+
+    private static Genotype<LongGene> genotype(PartitioningContext context, int... assignment) {
+        MSeq<LongGene> genes = MSeq.ofLength(assignment.length);
+        for (int element = 0; element < assignment.length; element++) {
+            genes.set(element, LongGene.of(assignment[element], 0, assignment.length - 1));
+        }
+        return Genotype.of(new LongObjectiveChromosome(context, genes.toISeq()));
+    }
+}
@@ -0,0 +1,36 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import io.jenetics.util.RandomRegistry;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Stephan Pirnbaum
+ */
+public class IslandTest {
+
+    @Test
+    public void tasksOnPoolThreadsUseRandomOfIsland() {
+        Random random = new Random(456);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Random used = CompletableFuture.supplyAsync(RandomRegistry::getRandom, Island.withRandom(pool, random)).join();
+            assertSame(random, used);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sequentialTasksUseRandomOfIsland() {
+        Random random = new Random(456);
+        Random used = CompletableFuture.supplyAsync(RandomRegistry::getRandom, Island.withRandom(Runnable::run, random)).join();
+        assertSame(random, used);
+    }
+}
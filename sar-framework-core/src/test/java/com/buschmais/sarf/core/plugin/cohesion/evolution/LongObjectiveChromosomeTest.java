@@ -0,0 +1,131 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
+import io.jenetics.LongGene;
+import io.jenetics.util.ISeq;
+import io.jenetics.util.MSeq;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares chromosomes derived incrementally from their parent with chromosomes computed from scratch.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class LongObjectiveChromosomeTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void moveAlongSelfLoop() {
+        Problem problem = CouplingProblem.newInstance(ids(8));
+        problem.addRelation(0, 0, 1);
+        problem.addRelation(0, 1, 2);
+        problem.addRelation(1, 0, 3);
+        problem.addRelation(2, 2, 4);
+        PartitioningContext context = new PartitioningContext(problem);
+        LongObjectiveChromosome parent = chromosome(context, 0, 0, 1, 1, 2, 2, 3, 3);
+        assertIncremental(parent, 1, 0, 1, 1, 2, 2, 3, 3);
+        assertIncremental(parent, 0, 0, 0, 1, 2, 2, 3, 3);
+    }
+
+    @Test
+    public void moveEmptiesComponent() {
+        Problem problem = CouplingProblem.newInstance(ids(8));
+        problem.addRelation(0, 1, 1);
+        problem.addRelation(1, 2, 2);
+        problem.addRelation(2, 2, 3);
+        problem.addRelation(2, 0, 4);
+        PartitioningContext context = new PartitioningContext(problem);
+        LongObjectiveChromosome parent = chromosome(context, 0, 0, 1, 2, 2, 3, 3, 3);
+        LongObjectiveChromosome child = assertIncremental(parent, 0, 0, 0, 2, 2, 3, 3, 3);
+        assertEquals(parent.getComponentCount() - 1, child.getComponentCount());
+        assertEquals(0, child.getCohesions()[1], 0);
+    }
+
+    @Test
+    public void moveIntoEmptyLabel() {
+        Problem problem = CouplingProblem.newInstance(ids(8));
+        problem.addRelation(0, 1, 1);
+        problem.addRelation(1, 1, 2);
+        problem.addRelation(1, 2, 3);
+        problem.addRelation(3, 1, 4);
+        PartitioningContext context = new PartitioningContext(problem);
+        LongObjectiveChromosome parent = chromosome(context, 0, 0, 0, 1, 1, 1, 1, 1);
+        LongObjectiveChromosome child = assertIncremental(parent, 0, 7, 0, 1, 1, 1, 1, 1);
+        assertEquals(parent.getComponentCount() + 1, child.getComponentCount());
+        // emptying the component again and moving its element into another empty label
+        assertIncremental(child, 0, 5, 0, 1, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void randomMovesMatchFullComputation() {
+        Random random = new Random(456);
+        int size = 40;
+        for (int run = 0; run < 20; run++) {
+            Problem problem = CouplingProblem.newInstance(ids(size));
+            for (int relation = 0; relation < 3 * size; relation++) {
+                int source = random.nextInt(size);
+                // every tenth relation is a self-loop
+                int target = relation % 10 == 0 ? source : random.nextInt(size);
+                problem.addRelation(source, target, random.nextDouble());
+            }
+            PartitioningContext context = new PartitioningContext(problem);
+            int[] assignment = new int[size];
+            for (int element = 0; element < size; element++) {
+                assignment[element] = random.nextInt(size / 4);
+            }
+            LongObjectiveChromosome chromosome = chromosome(context, assignment);
+            // derive each generation from the previous one, so that errors accumulate
+            for (int generation = 0; generation < 50; generation++) {
+                int moves = 1 + random.nextInt(size / 4);
+                for (int move = 0; move < moves; move++) {
+                    assignment[random.nextInt(size)] = random.nextInt(size);
+                }
+                chromosome = assertIncremental(chromosome, assignment);
+            }
+        }
+    }
+
+    /**
+     * Derives a chromosome with the given assignment from the parent and compares it with the chromosome computed
+     * from scratch.
+     *
+     * @return The derived chromosome.
+     */
+    private static LongObjectiveChromosome assertIncremental(LongObjectiveChromosome parent, int... assignment) {
+        LongObjectiveChromosome expected = chromosome(parent.getContext(), assignment);
+        LongObjectiveChromosome actual = parent.newInstance(genes(assignment));
+        assertArrayEquals(assignment, actual.getAssignment());
+        assertArrayEquals(expected.getComponentSizes(), actual.getComponentSizes());
+        assertEquals(expected.getComponentCount(), actual.getComponentCount());
+        assertArrayEquals(expected.getCohesions(), actual.getCohesions(), DELTA);
+        ComponentCouplings expectedCouplings = expected.getCouplings();
+        ComponentCouplings actualCouplings = actual.getCouplings();
+        assertEquals(expectedCouplings.size(), actualCouplings.size());
+        expectedCouplings.forEach((source, target, coupling) ->
+            assertEquals(coupling, actualCouplings.get(source, target), DELTA));
+        return actual;
+    }
+
+    private static LongObjectiveChromosome chromosome(PartitioningContext context, int... assignment) {
+        return new LongObjectiveChromosome(context, genes(assignment));
+    }
+
+    private static ISeq<LongGene> genes(int... assignment) {
+        MSeq<LongGene> genes = MSeq.ofLength(assignment.length);
+        for (int element = 0; element < assignment.length; element++) {
+            genes.set(element, LongGene.of(assignment[element], 0, assignment.length - 1));
+        }
+        return genes.toISeq();
+    }
+
+    private static long[] ids(int size) {
+        return LongStream.range(0, size).toArray();
+    }
+}
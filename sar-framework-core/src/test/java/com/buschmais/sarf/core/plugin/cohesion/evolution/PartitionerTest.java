@@ -0,0 +1,74 @@
+package com.buschmais.sarf.core.plugin.cohesion.evolution;
+
+import com.buschmais.sarf.core.plugin.cohesion.evolution.coupling.CouplingProblem;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Stephan Pirnbaum
+ */
+public class PartitionerTest {
+
+    private static final int SIZE = 30;
+
+    @Test
+    public void sequentialPartitioningIsReproducible() {
+        EvolutionSettings settings = EvolutionSettings.builder()
+            .generations(20)
+            .populationSize(20)
+            .islands(2)
+            .migrationInterval(5)
+            .build();
+        assertEquals(partition(settings), partition(settings));
+    }
+
+    /**
+     * The time limit is shared by all partitionings using the same criterion, e.g. by all levels of a hierarchical
+     * decomposition, so once it is exhausted a partitioning only evolves a single generation.
+     */
+    @Test
+    public void timeLimitCoversAllPartitionings() {
+        Duration budget = Duration.ofSeconds(1);
+        EvolutionSettings settings = EvolutionSettings.builder()
+            .generations(Integer.MAX_VALUE)
+            .populationSize(20)
+            .islands(2)
+            .migrationInterval(5)
+            .termination(TerminationCriterion.timeLimit(budget))
+            .build();
+        long start = System.nanoTime();
+        Map<Long, Set<Long>> first = partition(settings);
+        long second = System.nanoTime();
+        Map<Long, Set<Long>> next = partition(settings);
+        long end = System.nanoTime();
+        assertTrue(second - start >= budget.toNanos());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(end - second) + " ms", end - second < budget.toNanos() / 2);
+        assertEquals(elements(), first.values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+        assertEquals(elements(), next.values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+    }
+
+    private static Map<Long, Set<Long>> partition(EvolutionSettings settings) {
+        Random random = new Random(42);
+        Problem problem = CouplingProblem.newInstance(LongStream.range(0, SIZE).toArray());
+        for (int relation = 0; relation < 3 * SIZE; relation++) {
+            problem.addRelation(random.nextInt(SIZE), random.nextInt(SIZE), random.nextDouble());
+        }
+        return Partitioner.partition(new PartitioningContext(problem), Collections.emptyMap(), settings);
+    }
+
+    private static Set<Long> elements() {
+        return LongStream.range(0, SIZE).boxed().collect(Collectors.toCollection(HashSet::new));
+    }
+}
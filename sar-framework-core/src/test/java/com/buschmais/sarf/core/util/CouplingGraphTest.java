@@ -0,0 +1,135 @@
+package com.buschmais.sarf.core.util;
+
+import com.buschmais.sarf.core.EmbeddedDatabase;
+import com.buschmais.sarf.core.framework.repository.TypeRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the similarities computed by the {@link CouplingGraph} with those of
+ * {@link TypeRepository#computeTypeSimilarity()}, executed in an embedded database.
+ *
+ * @author Stephan Pirnbaum
+ */
+public class CouplingGraphTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Rule
+    public final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    public void selfLoopsAreSharedNeighbours() {
+        long[] ids = createTypes(3);
+        long a = ids[0], b = ids[1], c = ids[2];
+        couple(a, a, 1);
+        couple(a, b, 2);
+        couple(b, a, 0.5);
+        couple(b, c, 3);
+        couple(c, c, 4);
+        Map<Long, Map<Long, Double>> expected = new HashMap<>();
+        // a is its own neighbour and shared with b, which is coupled to a in both directions
+        expected.computeIfAbsent(b, k -> new HashMap<>()).put(a, (2.5 + 1) / (3 + 1));
+        // b is shared, the self-loops only count in the union
+        expected.computeIfAbsent(c, k -> new HashMap<>()).put(a, (3 + 2.5) / (3 + 4 + 1 + 2.5));
+        // c is its own neighbour and shared with b, so the similarity exceeds 1
+        expected.computeIfAbsent(c, k -> new HashMap<>()).put(b, (4 + 3) / (4 + 2.5));
+        assertSimilarities(expected, computeInMemory());
+        assertSimilarities(expected, computeWithCypher());
+    }
+
+    @Test
+    public void randomGraphsMatchCypher() {
+        Random random = new Random(42);
+        for (int run = 0; run < 5; run++) {
+            this.database.clear();
+            long[] ids = createTypes(25);
+            try (Transaction tx = this.database.beginTx()) {
+                for (long source : ids) {
+                    for (long target : ids) {
+                        // self-loops, couplings in both directions and equal couplings to shared neighbours are
+                        // included
+                        if (random.nextInt(8) == 0) {
+                            couple(source, target, 1 + random.nextInt(3));
+                        }
+                    }
+                }
+                tx.success();
+            }
+            assertSimilarities(computeWithCypher(), computeInMemory());
+        }
+    }
+
+    private Map<Long, Map<Long, Double>> computeInMemory() {
+        LongPairDoubleMap couplings = new LongPairDoubleMap();
+        try (Transaction tx = this.database.beginTx();
+             Result result = this.database.execute(EmbeddedDatabase.cypherOf(TypeRepository.class, "getCouplings"))) {
+            result.forEachRemaining(row -> {
+                Map coupling = (Map) row.values().iterator().next();
+                couplings.add((long) coupling.get("source"), (long) coupling.get("target"), (double) coupling.get("coupling"));
+            });
+            tx.success();
+        }
+        Map<Long, Map<Long, Double>> similarities = new HashMap<>();
+        new CouplingGraph(couplings).computeSimilarities(0, Double.NEGATIVE_INFINITY, (source, target, similarity) ->
+            similarities.computeIfAbsent(source, k -> new HashMap<>()).put(target, similarity));
+        return similarities;
+    }
+
+    private Map<Long, Map<Long, Double>> computeWithCypher() {
+        Map<Long, Map<Long, Double>> similarities = new HashMap<>();
+        try (Transaction tx = this.database.beginTx()) {
+            this.database.execute("MATCH ()-[s:IS_SIMILAR_TO]->() DELETE s").close();
+            this.database.execute(EmbeddedDatabase.cypherOf(TypeRepository.class, "computeTypeSimilarity")).close();
+            this.database.execute("MATCH (t1)-[s:IS_SIMILAR_TO]-(t2) WHERE ID(t1) > ID(t2) " +
+                "RETURN ID(t1) AS t1, ID(t2) AS t2, s.similarity AS similarity")
+                .forEachRemaining(row -> similarities.computeIfAbsent((Long) row.get("t1"), k -> new HashMap<>())
+                    .put((Long) row.get("t2"), (Double) row.get("similarity")));
+            tx.success();
+        }
+        return similarities;
+    }
+
+    private long[] createTypes(int count) {
+        long[] ids = new long[count];
+        try (Transaction tx = this.database.beginTx()) {
+            for (int i = 0; i < count; i++) {
+                ids[i] = (long) this.database.execute("CREATE (t:Type:Internal) RETURN ID(t) AS id").next().get("id");
+            }
+            tx.success();
+        }
+        return ids;
+    }
+
+    private void couple(long source, long target, double coupling) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("source", source);
+        parameters.put("target", target);
+        parameters.put("coupling", coupling);
+        try (Transaction tx = this.database.beginTx()) {
+            this.database.execute("MATCH (s), (t) WHERE ID(s) = {source} AND ID(t) = {target} " +
+                "CREATE (s)-[:COUPLES{coupling:{coupling}}]->(t)", parameters).close();
+            tx.success();
+        }
+    }
+
+    private static void assertSimilarities(Map<Long, Map<Long, Double>> expected, Map<Long, Map<Long, Double>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((source, targets) -> {
+            assertEquals(targets.keySet(), actual.get(source).keySet());
+            targets.forEach((target, similarity) -> {
+                assertNotNull(actual.get(source).get(target));
+                assertEquals(similarity, actual.get(source).get(target), DELTA);
+            });
+        });
+    }
+}